@@ -9,10 +9,10 @@ import static dev.langchain4j.service.spring.AiServiceWiringMode.EXPLICIT;
 @AiService(
         wiringMode = EXPLICIT,
 //        chatModel = "qwenChatModel",
-        streamingChatModel = "qwenStreamingChatModel",
+        streamingChatModel = "instrumentedStreamingChatModel", //包装了首字延迟等指标的qwenStreamingChatModel
         chatMemoryProvider = "chatMemoryProviderXiaozhi",
         tools = {"appointmentTools", "baiduSearchTools"}, //tools配置
-        contentRetriever = "contentRetrieverXiaozhiPincone" //配置向量存储
+        retrievalAugmentor = "retrievalAugmentorXiaozhi" //多个知识库命名空间并行检索
 )
 public interface XiaozhiAgent {
     @SystemMessage(fromResource = "zhaozhi-prompt-template.txt")
@@ -0,0 +1,27 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("chat_message_entries")
+public class ChatMessageEntries {
+    //唯一标识，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private ObjectId id;
+    private int memoryId;
+    private Map<String, Object> systemMessage; //系统消息单独保存，不参与窗口滑动
+    private List<Map<String, Object>> entries; //每条消息一个子文档，按时间顺序追加
+    private Long version; //每次写入自增
+    private Date lastUpdatedAt; //最近一次对话写入时间
+}
@@ -7,6 +7,9 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Date;
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -17,6 +20,14 @@ public class ChatMessages {
     private ObjectId messageId;
     private int memoryId;
     private String content; //存储当前聊天记录列表的json字符串
+    private byte[] payload; //二进制编码的聊天记录列表，启用二进制编码时代替content
+    private Long version; //每次写入自增，用于异步压缩时的乐观并发校验
+    private String summary; //增量摘要模式下的滚动摘要，不包含在content中
+    private Integer messageCount; //content中的消息数量，冗余保存以便定时任务在服务端过滤
+    private Date lastUpdatedAt; //最近一次对话写入时间
+    private Date lastCompressedAt; //最近一次压缩时间
+    private List<Long> messageSeqs; //content中每条消息的序号，与消息一一对应，合并并发写入时按序号区分新旧消息
+    private Long nextSeq; //下一条新消息的序号
     
     public int getMemoryId() {
         return memoryId;
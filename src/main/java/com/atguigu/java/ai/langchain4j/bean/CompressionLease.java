@@ -0,0 +1,21 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("compression_leases")
+public class CompressionLease {
+    //分片标识，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private String shardId;
+    private String owner; //当前持有租约的实例
+    private Date expiresAt; //租约过期时间，过期后其他实例可以接管
+}
@@ -0,0 +1,22 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("embedding_cache")
+public class EmbeddingCacheEntry {
+    //模型名称与文本内容的SHA-256摘要，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private String cacheKey;
+    private String modelName; //生成向量的模型
+    private float[] vector; //向量
+    private Date expiresAt; //过期时间，由TTL索引自动删除
+}
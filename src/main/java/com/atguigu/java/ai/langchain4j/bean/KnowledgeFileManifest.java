@@ -0,0 +1,28 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("knowledge_manifest")
+public class KnowledgeFileManifest {
+    //文件相对于知识库目录的路径，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private String path;
+    private long size; //文件大小
+    private long lastModified; //文件修改时间（毫秒）
+    private String fingerprint; //文件内容的SHA-256摘要
+    private Map<String, String> segments; //已写入向量库的片段：片段ID -> 片段文本摘要
+    private Date indexedAt; //最近一次导入时间
+    private String namespace; //片段所在的知识库命名空间，为空表示default
+    private String storeType; //片段所在的向量存储类型：local或pinecone
+    private String storeId; //片段所在的向量存储标识，本地索引重建后变化
+}
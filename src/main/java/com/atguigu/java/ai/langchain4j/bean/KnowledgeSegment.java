@@ -0,0 +1,22 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("knowledge_segments")
+public class KnowledgeSegment {
+    //片段ID，与向量库中的ID相同，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private String segmentId;
+    private String path; //所属文件相对于知识库目录的路径
+    private String text; //片段文本
+    private Map<String, Object> metadata; //片段元数据
+}
@@ -0,0 +1,23 @@
+package com.atguigu.java.ai.langchain4j.bean;
+
+import com.atguigu.java.ai.langchain4j.entity.SearchEvidence;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document("search_cache")
+public class SearchCacheEntry {
+    //规范化后的查询与来源类型组成的缓存键，映射到 MongoDB 文档的 _id 字段
+    @Id
+    private String cacheKey;
+    private List<SearchEvidence> evidences; //解析后的搜索结果
+    private Date expiresAt; //过期时间，由TTL索引自动删除
+}
@@ -0,0 +1,49 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 语义答案缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.answer-cache")
+public class AnswerCacheConfig {
+
+    /**
+     * 是否启用语义答案缓存，默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 问题向量的最低余弦相似度（langchain4j得分，范围[0, 1]），达到后直接返回缓存的答案
+     */
+    private double similarityThreshold = 0.96;
+
+    /**
+     * 缓存的最大答案数量，超出后按最近最少使用淘汰
+     */
+    private long maxSize = 2000;
+
+    /**
+     * 答案的有效期（秒）
+     */
+    private long ttlSeconds = 3600;
+
+    /**
+     * 超过该长度的问题通常包含个人情况，不查询也不写入缓存
+     */
+    private int maxQuestionChars = 64;
+
+    /**
+     * 回放缓存答案时每个分片的字符数
+     */
+    private int replayChunkChars = 8;
+
+    /**
+     * 与日期相关的问题（今天、明天、周末、几月几号等）的正则，答案随日期变化，不查询也不写入缓存
+     */
+    private String dateSensitivePattern = "今天|今日|今晚|明天|明日|后天|现在|目前|本周|这周|下周|周末|星期|礼拜|周[一二三四五六日天]|\\d+\\s*[月日号]";
+}
@@ -0,0 +1,27 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import com.atguigu.java.ai.langchain4j.model.InstrumentedStreamingChatModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话模型配置
+ * 在DashScope流式模型外包装一层指标统计，记录首字延迟、调用耗时和token用量
+ */
+@Configuration
+public class ChatModelConfig {
+
+    @Value("${langchain4j.community.dashscope.streaming-chat-model.model-name:qwen-plus}")
+    private String streamingModelName;
+
+    @Bean
+    StreamingChatLanguageModel instrumentedStreamingChatModel(
+            @Qualifier("qwenStreamingChatModel") StreamingChatLanguageModel qwenStreamingChatModel,
+            MeterRegistry meterRegistry) {
+        return new InstrumentedStreamingChatModel(qwenStreamingChatModel, streamingModelName, meterRegistry);
+    }
+}
@@ -27,6 +27,46 @@ public class CompressionConfig {
      */
     private int keepRecentMessages = 3;
     
+    /**
+     * 分块总结时同时进行的模型调用数量上限
+     */
+    private int maxInFlight = 4;
+    
+    /**
+     * 是否启用异步压缩：先保存原始消息，再由后台线程完成压缩
+     */
+    private boolean asyncCompaction = false;
+    
+    /**
+     * 异步压缩的后台线程数量
+     */
+    private int compactionWorkers = 2;
+    
+    /**
+     * 是否启用增量摘要：摘要单独保存，每次只将新移出窗口的消息合并进已有摘要
+     */
+    private boolean incrementalSummary = false;
+    
+    /**
+     * 定时任务每批从游标读取的记录数量
+     */
+    private int scanBatchSize = 100;
+    
+    /**
+     * 定时任务并行处理每批记录的线程数量
+     */
+    private int scanParallelism = 4;
+    
+    /**
+     * 定时任务按memoryId取模划分的分片数量，多实例部署时各实例通过租约分摊分片
+     */
+    private int scanShards = 1;
+    
+    /**
+     * 分片租约的有效期（秒）
+     */
+    private int leaseSeconds = 600;
+    
     /**
      * 是否启用压缩功能
      */
@@ -0,0 +1,83 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 向量存储配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.embedding")
+public class EmbeddingConfig {
+
+    /**
+     * 向量存储类型：pinecone（远程）或 local（本地HNSW索引）
+     */
+    private String store = "pinecone";
+
+    /**
+     * 本地索引的持久化目录，为空时只保存在内存中
+     */
+    private String localPath = "data/hnsw";
+
+    /**
+     * 本地索引的距离度量：cosine、dot 或 euclidean
+     */
+    private String metric = "cosine";
+
+    /**
+     * HNSW每个节点在上层保留的邻居数量，第0层为其2倍
+     */
+    private int hnswM = 16;
+
+    /**
+     * HNSW构建索引时的候选集大小，越大召回率越高、写入越慢
+     */
+    private int efConstruction = 100;
+
+    /**
+     * HNSW检索时的候选集大小，越大召回率越高、检索越慢
+     */
+    private int efSearch = 64;
+
+    /**
+     * 本地索引保存图结构的间隔（毫秒），为0时每批写操作后立即保存
+     */
+    private long localFlushIntervalMs = 1000;
+
+    /**
+     * 本地索引中已删除节点占比达到该值时压缩重建，为0时不压缩
+     */
+    private double localCompactionRatio = 0.3;
+
+    /**
+     * 是否缓存向量模型的计算结果
+     */
+    private boolean cacheEnabled = true;
+
+    /**
+     * 本地向量缓存的最大条数
+     */
+    private long cacheMaxSize = 20000;
+
+    /**
+     * 是否启用MongoDB二级向量缓存（多实例共享，重启后保留）
+     */
+    private boolean mongoCacheEnabled = false;
+
+    /**
+     * MongoDB二级向量缓存的过期时间（秒）
+     */
+    private long mongoCacheTtlSeconds = 2592000;
+
+    /**
+     * 每次调用向量模型的最大文本数量（DashScope text-embedding-v3 单次最多10条）
+     */
+    private int batchSize = 10;
+
+    public boolean isLocalStore() {
+        return "local".equalsIgnoreCase(store);
+    }
+}
@@ -0,0 +1,43 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import com.atguigu.java.ai.langchain4j.store.embedding.CachingEmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+
+/**
+ * 向量模型配置
+ * 在DashScope向量模型外包装一层缓存，按类型注入EmbeddingModel的地方（检索、知识库导入）都使用带缓存的模型
+ */
+@Configuration
+public class EmbeddingModelConfig {
+
+    @Autowired
+    private EmbeddingConfig embeddingConfig;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${langchain4j.community.dashscope.embedding-model.model-name:text-embedding-v3}")
+    private String modelName;
+
+    @Bean
+    @Primary
+    EmbeddingModel cachingEmbeddingModel(@Qualifier("qwenEmbeddingModel") EmbeddingModel qwenEmbeddingModel,
+                                         MeterRegistry meterRegistry) {
+        if (!embeddingConfig.isCacheEnabled()) {
+            return qwenEmbeddingModel;
+        }
+        return new CachingEmbeddingModel(qwenEmbeddingModel, modelName, embeddingConfig.getCacheMaxSize(),
+                embeddingConfig.getBatchSize(), embeddingConfig.isMongoCacheEnabled() ? mongoTemplate : null,
+                Duration.ofSeconds(embeddingConfig.getMongoCacheTtlSeconds()), meterRegistry);
+    }
+}
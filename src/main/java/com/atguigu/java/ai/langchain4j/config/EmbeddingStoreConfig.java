@@ -1,5 +1,7 @@
 package com.atguigu.java.ai.langchain4j.config;
 
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -8,6 +10,9 @@ import dev.langchain4j.store.embedding.pinecone.PineconeServerlessIndexConfig;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
 
 
 @Configuration
@@ -15,13 +20,38 @@ public class EmbeddingStoreConfig {
     @Autowired
     private EmbeddingModel embeddingModel;
 
+    @Autowired
+    private EmbeddingConfig embeddingConfig;
+
     @Bean
     public EmbeddingStore<TextSegment> embeddingStore() {
+        //容器关闭时由Spring调用close()刷盘并释放内存映射文件
+        return createEmbeddingStore(null);
+    }
+
+    /**
+     * 创建知识库命名空间对应的向量存储
+     *
+     * @param namespace 命名空间，为null时使用默认的索引名称空间和本地目录
+     */
+    public EmbeddingStore<TextSegment> createEmbeddingStore(String namespace) {
+        if (embeddingConfig.isLocalStore()) {
+            //本地HNSW索引，检索不经过网络；每个命名空间使用单独的子目录
+            Path localPath = StringUtils.hasText(embeddingConfig.getLocalPath()) ? Path.of(embeddingConfig.getLocalPath()) : null;
+            return new HnswEmbeddingStore(
+                    localPath != null && namespace != null ? localPath.resolve(namespace) : localPath,
+                    DistanceMetric.from(embeddingConfig.getMetric()),
+                    embeddingConfig.getHnswM(),
+                    embeddingConfig.getEfConstruction(),
+                    embeddingConfig.getEfSearch(),
+                    embeddingConfig.getLocalFlushIntervalMs(),
+                    embeddingConfig.getLocalCompactionRatio());
+        }
         //创建向量存储
         EmbeddingStore<TextSegment> embeddingStore = PineconeEmbeddingStore.builder()
                 .apiKey(System.getenv("PINECONE_API_KEY"))
                 .index("xiaozhi-index")//如果指定的索引不存在，将创建一个新的索引
-                .nameSpace("xiaozhi-namespace") //如果指定的名称空间不存在，将创建一个新的名称 空间
+                .nameSpace(pineconeNamespace(namespace)) //如果指定的名称空间不存在，将创建一个新的名称 空间
                 .createIndex(PineconeServerlessIndexConfig.builder()
                         .cloud("AWS") //指定索引部署在 AWS 云服务上。
                         .region("us-east-1") //指定索引所在的 AWS 区域为 us-east-1。
@@ -30,4 +60,11 @@ public class EmbeddingStoreConfig {
                 .build();
         return embeddingStore;
     }
-}
\ No newline at end of file
+
+    /**
+     * 知识库命名空间对应的Pinecone名称空间
+     */
+    public String pineconeNamespace(String namespace) {
+        return namespace == null ? "xiaozhi-namespace" : "xiaozhi-namespace-" + namespace;
+    }
+}
@@ -0,0 +1,91 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天记忆存储配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.memory")
+public class MemoryConfig {
+
+    /**
+     * 存储结构：blob 整段JSON保存在chat_messages.content；entries 每条消息一个子文档保存在chat_message_entries
+     */
+    private String layout = "blob";
+
+    /**
+     * 记忆窗口类型：messages 按消息条数截断；tokens 按估算的token总数截断
+     */
+    private String windowType = "messages";
+
+    /**
+     * 记忆窗口保留的最大消息数量
+     */
+    private int maxMessages = 20;
+
+    /**
+     * tokens窗口下记忆窗口的token预算
+     */
+    private int maxTokens = 4000;
+
+    /**
+     * 单条消息token数量缓存的最大条目数
+     */
+    private long tokenCacheMaxSize = 100000;
+
+    /**
+     * 是否在记忆存储前启用本地缓存
+     */
+    private boolean cacheEnabled = true;
+
+    /**
+     * 本地缓存最多保存的对话数量
+     */
+    private long cacheMaxSize = 10000;
+
+    /**
+     * 本地缓存的过期时间（秒），从写入缓存开始计时，到期后重新从存储读取
+     */
+    private long cacheTtlSeconds = 600;
+
+    /**
+     * chat_messages的消息编码：json 文本保存在content字段；binary 紧凑二进制保存在payload字段
+     */
+    private String codec = "json";
+
+    /**
+     * 二进制编码时是否压缩消息体
+     */
+    private boolean codecCompression = true;
+
+    /**
+     * 消息体超过该字节数时才压缩
+     */
+    private int codecCompressionThreshold = 512;
+
+    /**
+     * 进程内按memoryId串行写入的锁分段数
+     */
+    private int writeLockStripes = 64;
+
+    /**
+     * 写入时版本号冲突（其他实例同时写入）的最大重试次数
+     */
+    private int writeMaxRetries = 5;
+
+    public boolean isTokenWindow() {
+        return "tokens".equalsIgnoreCase(windowType);
+    }
+
+    public boolean isEntriesLayout() {
+        return "entries".equalsIgnoreCase(layout);
+    }
+
+    public boolean isBinaryCodec() {
+        return "binary".equalsIgnoreCase(codec);
+    }
+}
@@ -1,12 +1,17 @@
 package com.atguigu.java.ai.langchain4j.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * MongoDB索引配置
  * 用于优化查询性能
@@ -14,11 +19,15 @@ import org.springframework.stereotype.Component;
 @Component
 public class MongoIndexConfig implements CommandLineRunner {
 
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexConfig.class);
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
     @Override
     public void run(String... args) throws Exception {
+        // 唯一索引是并发首次写入的唯一保护，创建失败时直接启动失败，不降级
+        ensureMemoryIdIndex(mongoTemplate.indexOps("chat_messages"));
         createIndexes();
     }
 
@@ -30,18 +39,52 @@ public class MongoIndexConfig implements CommandLineRunner {
             // 为chat_messages集合创建索引
             IndexOperations indexOps = mongoTemplate.indexOps("chat_messages");
             
-            // 为memoryId字段创建索引（用于快速查找特定用户的聊天记录）
-            Index memoryIdIndex = new Index().on("memoryId", org.springframework.data.domain.Sort.Direction.ASC);
-            indexOps.ensureIndex(memoryIdIndex);
-            
             // 为messageId字段创建唯一索引（确保消息ID唯一性）
             Index messageIdIndex = new Index().on("messageId", org.springframework.data.domain.Sort.Direction.ASC).unique();
             indexOps.ensureIndex(messageIdIndex);
             
-            System.out.println("MongoDB索引创建完成");
+            // 为压缩任务的预过滤条件创建复合索引（只扫描消息数量超过阈值且压缩后有更新的记录）
+            Index compressionScanIndex = new Index()
+                    .on("messageCount", org.springframework.data.domain.Sort.Direction.ASC)
+                    .on("lastUpdatedAt", org.springframework.data.domain.Sort.Direction.ASC)
+                    .on("lastCompressedAt", org.springframework.data.domain.Sort.Direction.ASC);
+            indexOps.ensureIndex(compressionScanIndex);
+            
+            // 按消息子文档存储的集合：每个memoryId只有一个文档
+            IndexOperations entriesIndexOps = mongoTemplate.indexOps("chat_message_entries");
+            entriesIndexOps.ensureIndex(new Index().on("memoryId", org.springframework.data.domain.Sort.Direction.ASC).unique());
+            
+            // 搜索结果二级缓存：到达expiresAt后由MongoDB自动删除
+            IndexOperations searchCacheIndexOps = mongoTemplate.indexOps("search_cache");
+            searchCacheIndexOps.ensureIndex(new Index().on("expiresAt", org.springframework.data.domain.Sort.Direction.ASC).expire(0));
+            
+            // 向量二级缓存：到达expiresAt后由MongoDB自动删除
+            IndexOperations embeddingCacheIndexOps = mongoTemplate.indexOps("embedding_cache");
+            embeddingCacheIndexOps.ensureIndex(new Index().on("expiresAt", org.springframework.data.domain.Sort.Direction.ASC).expire(0));
+            
+            logger.info("MongoDB索引创建完成");
+        } catch (Exception e) {
+            logger.error("创建MongoDB索引时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * memoryId建成唯一索引：并发首次写入时只有一个实例能插入成功，其余按版本冲突重试
+     * 旧版本在同一个键上建过普通索引memoryId_1，键相同时无法再建唯一索引，先删除旧索引再重建；
+     * 存在重复数据导致重建失败时恢复普通索引并抛出异常，需要手动清理重复记录后重新启动
+     */
+    private void ensureMemoryIdIndex(IndexOperations indexOps) {
+        for (IndexInfo indexInfo : indexOps.getIndexInfo()) {
+            if (indexInfo.isIndexForFields(List.of("memoryId")) && !indexInfo.isUnique()) {
+                indexOps.dropIndex(indexInfo.getName());
+                logger.info("已删除chat_messages上的普通索引 {}，重建为唯一索引", indexInfo.getName());
+            }
+        }
+        try {
+            indexOps.ensureIndex(new Index().on("memoryId", org.springframework.data.domain.Sort.Direction.ASC).unique());
         } catch (Exception e) {
-            System.err.println("创建MongoDB索引时出错: " + e.getMessage());
-            e.printStackTrace();
+            indexOps.ensureIndex(new Index().on("memoryId", org.springframework.data.domain.Sort.Direction.ASC));
+            throw new IllegalStateException("chat_messages.memoryId唯一索引创建失败，请清理重复的memoryId记录后重新启动", e);
         }
     }
 }
@@ -0,0 +1,105 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 知识库检索配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.rag")
+public class RagConfig {
+
+    /**
+     * 是否使用关键词与向量的混合检索，关闭时只做向量检索
+     */
+    private boolean hybridEnabled = true;
+
+    /**
+     * 向量检索召回的候选数量
+     */
+    private int vectorCandidates = 10;
+
+    /**
+     * 向量检索候选的最低相似度
+     */
+    private double vectorMinScore = 0.5;
+
+    /**
+     * 关键词检索召回的候选数量
+     */
+    private int lexicalCandidates = 10;
+
+    /**
+     * 倒数排名融合（RRF）的平滑常数
+     */
+    private int rrfK = 60;
+
+    /**
+     * 重排序后返回给模型的片段数量
+     */
+    private int maxResults = 3;
+
+    /**
+     * 重排序得分的最低阈值，低于该值的片段不返回
+     */
+    private double minScore = 0.2;
+
+    /**
+     * 重排序时融合排名得分的权重
+     */
+    private double fusionWeight = 0.6;
+
+    /**
+     * 重排序时查询词覆盖度得分的权重
+     */
+    private double lexicalWeight = 0.4;
+
+    /**
+     * 单次检索的总时间预算（毫秒），所有命名空间并行检索，超时未返回的命名空间被忽略；
+     * 只路由到一个命名空间时直接在调用线程中检索，不受预算限制
+     */
+    private long retrievalBudgetMs = 1500;
+
+    /**
+     * 并行检索的线程数
+     */
+    private int retrievalParallelism = 8;
+
+    /**
+     * 等待检索线程的任务队列长度，队列已满时本次检索跳过该命名空间
+     */
+    private int retrievalQueueCapacity = 64;
+
+    /**
+     * 每个命名空间同时进行的检索数量上限，避免一个变慢的命名空间占满所有检索线程
+     */
+    private int retrievalConcurrencyPerSource = 4;
+
+    /**
+     * 知识库命名空间：每个命名空间使用单独的向量存储，未匹配任何命名空间的文件归入default
+     */
+    private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+
+    @Data
+    public static class Namespace {
+
+        /**
+         * 归入该命名空间的文件（相对于知识库目录的glob，例如 医院信息.* 或 departments/**）
+         */
+        private List<String> paths = new ArrayList<>();
+
+        /**
+         * 路由关键词：为空时每次都检索该命名空间；不为空时只有问题包含其中一个关键词才检索，
+         * 没有任何命名空间的关键词被命中时检索全部命名空间
+         */
+        private List<String> keywords = new ArrayList<>();
+    }
+}
@@ -0,0 +1,129 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 搜索工具配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.search")
+public class SearchConfig {
+
+    /**
+     * 建立连接的超时时间（毫秒）
+     */
+    private int connectTimeoutMs = 2000;
+
+    /**
+     * 等待响应及读取响应数据的超时时间（毫秒）
+     */
+    private int readTimeoutMs = 5000;
+
+    /**
+     * 单次搜索调用的总超时时间（毫秒），包含排队等待连接的时间
+     */
+    private int callTimeoutMs = 8000;
+
+    /**
+     * 连接池最大连接数，即同时在途的搜索请求上限
+     */
+    private int maxConnections = 50;
+
+    /**
+     * 连接池已满时允许排队等待连接的请求数，超出后直接失败
+     */
+    private int maxPendingAcquires = 100;
+
+    /**
+     * 排队等待连接的超时时间（毫秒）
+     */
+    private int pendingAcquireTimeoutMs = 2000;
+
+    /**
+     * 空闲连接的最大保留时间（秒）
+     */
+    private int maxIdleSeconds = 30;
+
+    /**
+     * 是否启用搜索结果缓存
+     */
+    private boolean cacheEnabled = true;
+
+    /**
+     * 本地缓存最多保存的查询数量
+     */
+    private long cacheMaxSize = 5000;
+
+    /**
+     * 本地缓存的过期时间（秒）
+     */
+    private long cacheTtlSeconds = 1800;
+
+    /**
+     * 是否启用MongoDB二级缓存，多个实例共享搜索结果
+     */
+    private boolean mongoCacheEnabled = false;
+
+    /**
+     * MongoDB二级缓存的过期时间（秒）
+     */
+    private long mongoCacheTtlSeconds = 86400;
+
+    /**
+     * 智能分导诊是否并发搜索医疗信息、就诊科室和疾病症状并合并结果
+     */
+    private boolean fanOutGuidance = true;
+
+    /**
+     * 并发搜索的时间预算（毫秒），超时未返回的一路按空结果处理
+     */
+    private int guidanceBudgetMs = 6000;
+
+    /**
+     * 合并后最多返回的证据数量
+     */
+    private int guidanceMaxEvidence = 8;
+
+    /**
+     * 熔断器统计失败率的调用次数窗口
+     */
+    private int circuitWindowSize = 20;
+
+    /**
+     * 窗口内至少有多少次调用才计算失败率
+     */
+    private int circuitMinimumCalls = 10;
+
+    /**
+     * 打开熔断的失败率（百分比）
+     */
+    private int circuitFailureRateThreshold = 50;
+
+    /**
+     * 熔断打开的持续时间（毫秒），之后进入半开状态放行探测请求
+     */
+    private long circuitOpenMs = 30000;
+
+    /**
+     * 半开状态放行的探测请求数，全部成功后关闭熔断
+     */
+    private int circuitHalfOpenPermits = 2;
+
+    /**
+     * 是否启用对冲请求
+     */
+    private boolean hedgeEnabled = false;
+
+    /**
+     * 计算p95延迟所需的最少成功调用次数，不足时不发出对冲请求
+     */
+    private int hedgeMinSamples = 20;
+
+    /**
+     * 对冲请求的最小延迟（毫秒）
+     */
+    private long hedgeMinDelayMs = 200;
+}
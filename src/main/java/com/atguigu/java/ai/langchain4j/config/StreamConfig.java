@@ -0,0 +1,34 @@
+package com.atguigu.java.ai.langchain4j.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 流式输出配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xiaozhi.stream")
+public class StreamConfig {
+
+    /**
+     * 是否把模型逐个输出的token合并成较大的分片再写给客户端，关闭后每个token单独写出
+     */
+    private boolean coalesceEnabled = true;
+
+    /**
+     * 分片累计达到该字节数（UTF-8）后立即写出
+     */
+    private int maxChunkBytes = 64;
+
+    /**
+     * 分片中第一个token到达后最多等待的毫秒数，到时即使未达到字节数也写出
+     */
+    private long maxDelayMs = 20;
+
+    /**
+     * SSE接口的心跳间隔（秒），用于保持连接并及时发现客户端断开
+     */
+    private long sseHeartbeatSeconds = 15;
+}
@@ -1,55 +1,137 @@
 package com.atguigu.java.ai.langchain4j.config;
 
+import com.atguigu.java.ai.langchain4j.memory.QwenTokenEstimator;
+import com.atguigu.java.ai.langchain4j.memory.TokenBudgetChatMemory;
+import com.atguigu.java.ai.langchain4j.rag.FanOutContentRetriever;
+import com.atguigu.java.ai.langchain4j.rag.HybridContentRetriever;
+import com.atguigu.java.ai.langchain4j.rag.InstrumentedContentRetriever;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeNamespaces;
+import com.atguigu.java.ai.langchain4j.rag.LexicalSegmentIndex;
+import com.atguigu.java.ai.langchain4j.rag.LocalReranker;
+import com.atguigu.java.ai.langchain4j.search.RelevanceScorer;
+import com.atguigu.java.ai.langchain4j.store.CachingChatMemoryStore;
+import com.atguigu.java.ai.langchain4j.store.EntriesMongoChatMemoryStore;
 import com.atguigu.java.ai.langchain4j.store.HierarchicalSummarizationMemoryStore;
+import com.atguigu.java.ai.langchain4j.store.InstrumentedChatMemoryStore;
 import com.atguigu.java.ai.langchain4j.store.MongoChatMemoryStore;
+import com.atguigu.java.ai.langchain4j.store.embedding.InstrumentedEmbeddingStore;
+import com.atguigu.java.ai.langchain4j.tools.ToolMetrics;
+import com.atguigu.java.ai.langchain4j.tools.ToolTimingChatMemory;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class XiaozhiAgentConfig {
     @Autowired
     private MongoChatMemoryStore mongoChatMemoryStore;
     
+    @Autowired
+    private EntriesMongoChatMemoryStore entriesMongoChatMemoryStore;
+    
     @Autowired
     private HierarchicalSummarizationMemoryStore hierarchicalSummarizationMemoryStore;
     
+    @Autowired
+    private MemoryConfig memoryConfig;
+    
+    @Autowired
+    private QwenTokenEstimator qwenTokenEstimator;
+    
     @Autowired
     private EmbeddingStore embeddingStore;
     @Autowired
     private EmbeddingModel embeddingModel;
     
+    @Autowired
+    private RagConfig ragConfig;
+    
+    @Autowired
+    private LexicalSegmentIndex lexicalSegmentIndex;
+    
+    @Autowired
+    private RelevanceScorer relevanceScorer;
+    
+    @Autowired
+    private KnowledgeNamespaces knowledgeNamespaces;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ToolMetrics toolMetrics;
+    
     @Bean
-    ChatMemoryProvider chatMemoryProviderXiaozhi() {
-        return memoryId -> MessageWindowChatMemory.builder()
-                .id(memoryId)
-                .maxMessages(20)
-                .chatMemoryStore(mongoChatMemoryStore)
-                .build();
+    CachingChatMemoryStore cachedChatMemoryStore(MeterRegistry meterRegistry) {
+        // 根据配置选择整段JSON存储或按消息子文档存储
+        ChatMemoryStore chatMemoryStore = memoryConfig.isEntriesLayout() ? entriesMongoChatMemoryStore : mongoChatMemoryStore;
+        return new CachingChatMemoryStore("chat-memory", chatMemoryStore, memoryConfig.getCacheMaxSize(),
+                Duration.ofSeconds(memoryConfig.getCacheTtlSeconds()), meterRegistry);
     }
     
     @Bean
-    ChatMemoryProvider chatMemoryProviderXiaozhiWithHierarchicalSummarization() {
-        return memoryId -> MessageWindowChatMemory.builder()
-                .id(memoryId)
-                .maxMessages(20)
-                .chatMemoryStore(hierarchicalSummarizationMemoryStore)
-                .build();
+    CachingChatMemoryStore cachedHierarchicalChatMemoryStore(MeterRegistry meterRegistry) {
+        return new CachingChatMemoryStore("chat-memory-hierarchical", hierarchicalSummarizationMemoryStore,
+                memoryConfig.getCacheMaxSize(), Duration.ofSeconds(memoryConfig.getCacheTtlSeconds()), meterRegistry);
+    }
+    
+    @Bean
+    ChatMemoryProvider chatMemoryProviderXiaozhi(@Qualifier("cachedChatMemoryStore") CachingChatMemoryStore cachedChatMemoryStore) {
+        ChatMemoryStore chatMemoryStore = memoryConfig.isCacheEnabled() ? cachedChatMemoryStore
+                : memoryConfig.isEntriesLayout() ? entriesMongoChatMemoryStore : mongoChatMemoryStore;
+        // 记录对话实际感受到的记忆读写耗时（含缓存）
+        ChatMemoryStore instrumented = new InstrumentedChatMemoryStore("chat-memory", chatMemoryStore, meterRegistry);
+        return memoryId -> buildChatMemory(memoryId, instrumented);
+    }
+    
+    @Bean
+    ChatMemoryProvider chatMemoryProviderXiaozhiWithHierarchicalSummarization(
+            @Qualifier("cachedHierarchicalChatMemoryStore") CachingChatMemoryStore cachedHierarchicalChatMemoryStore) {
+        ChatMemoryStore chatMemoryStore = memoryConfig.isCacheEnabled() ? cachedHierarchicalChatMemoryStore
+                : hierarchicalSummarizationMemoryStore;
+        ChatMemoryStore instrumented = new InstrumentedChatMemoryStore("chat-memory-hierarchical", chatMemoryStore, meterRegistry);
+        return memoryId -> buildChatMemory(memoryId, instrumented);
+    }
+
+    /**
+     * 根据配置创建按消息条数或按token预算截断的记忆窗口，外面包一层记录工具调用耗时的装饰器
+     */
+    private ChatMemory buildChatMemory(Object memoryId, ChatMemoryStore chatMemoryStore) {
+        ChatMemory chatMemory;
+        if (memoryConfig.isTokenWindow()) {
+            chatMemory = new TokenBudgetChatMemory(memoryId, memoryConfig.getMaxTokens(), qwenTokenEstimator, chatMemoryStore);
+        } else {
+            chatMemory = MessageWindowChatMemory.builder()
+                    .id(memoryId)
+                    .maxMessages(memoryConfig.getMaxMessages())
+                    .chatMemoryStore(chatMemoryStore)
+                    .build();
+        }
+        return new ToolTimingChatMemory(chatMemory, toolMetrics);
     }
 
     //    @Bean
@@ -69,13 +151,48 @@ public class XiaozhiAgentConfig {
 //    }
     @Bean
     ContentRetriever contentRetrieverXiaozhiPincone() {
+        return buildContentRetriever(embeddingStore, KnowledgeNamespaces.DEFAULT);
+    }
+    
+    /**
+     * 每个知识库命名空间一个检索器，问题按关键词路由后并行检索，超过时间预算的命名空间被忽略
+     */
+    @Bean
+    FanOutContentRetriever fanOutContentRetrieverXiaozhi(
+            @Qualifier("contentRetrieverXiaozhiPincone") ContentRetriever contentRetrieverXiaozhiPincone) {
+        Map<String, ContentRetriever> sources = new LinkedHashMap<>();
+        for (String namespace : knowledgeNamespaces.names()) {
+            ContentRetriever source = KnowledgeNamespaces.DEFAULT.equals(namespace) ? contentRetrieverXiaozhiPincone
+                    : buildContentRetriever(knowledgeNamespaces.store(namespace), namespace);
+            sources.put(namespace, new InstrumentedContentRetriever(namespace, source, meterRegistry));
+        }
+        return new FanOutContentRetriever(sources, knowledgeNamespaces::route, ragConfig.getRetrievalBudgetMs(),
+                ragConfig.getMaxResults(), ragConfig.getRrfK(), ragConfig.getRetrievalParallelism(),
+                ragConfig.getRetrievalQueueCapacity(), ragConfig.getRetrievalConcurrencyPerSource());
+    }
+    
+    @Bean
+    RetrievalAugmentor retrievalAugmentorXiaozhi(FanOutContentRetriever fanOutContentRetrieverXiaozhi) {
+        return DefaultRetrievalAugmentor.builder()
+                .contentRetriever(new InstrumentedContentRetriever("all", fanOutContentRetrieverXiaozhi, meterRegistry))
+                .build();
+    }
+    
+    private ContentRetriever buildContentRetriever(EmbeddingStore<TextSegment> embeddingStore, String namespace) {
+        // 只在检索路径上统计向量检索耗时和相似度得分，导入时的写入不经过这里
+        EmbeddingStore<TextSegment> store = new InstrumentedEmbeddingStore<>(embeddingStore, namespace, meterRegistry);
+        if (ragConfig.isHybridEnabled()) {
+            // 关键词与向量混合检索，按倒数排名融合后本地重排序
+            LocalReranker reranker = new LocalReranker(relevanceScorer, ragConfig.getFusionWeight(), ragConfig.getLexicalWeight());
+            return new HybridContentRetriever(store, embeddingModel, lexicalSegmentIndex, reranker, ragConfig, namespace);
+        }
         // 创建一个 EmbeddingStoreContentRetriever 对象，用于从嵌入存储中检索内容
         return EmbeddingStoreContentRetriever
                 .builder()
         // 设置用于生成嵌入向量的嵌入模型
                 .embeddingModel(embeddingModel)
         // 指定要使用的嵌入存储
-                .embeddingStore(embeddingStore)
+                .embeddingStore(store)
         // 设置最大检索结果数量，这里表示最多返回 1 条匹配结果
                 .maxResults(1)
         // 设置最小得分阈值，只有得分大于等于 0.8 的结果才会被返回
@@ -0,0 +1,66 @@
+package com.atguigu.java.ai.langchain4j.controller;
+
+import com.atguigu.java.ai.langchain4j.store.CachingChatMemoryStore;
+import com.atguigu.java.ai.langchain4j.store.EntriesMongoChatMemoryStore;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天记忆管理控制器
+ */
+@RestController
+@RequestMapping("/api/memory")
+@Tag(name = "聊天记忆管理", description = "聊天记忆存储相关接口")
+public class MemoryController {
+
+    @Autowired
+    private EntriesMongoChatMemoryStore entriesMongoChatMemoryStore;
+
+    @Autowired
+    private List<CachingChatMemoryStore> cachingChatMemoryStores;
+
+    @GetMapping("/cache-stats")
+    @Operation(summary = "查询记忆缓存统计", description = "返回各记忆缓存的大小、命中次数、未命中次数和命中率")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        Map<String, Object> result = new HashMap<>();
+        for (CachingChatMemoryStore store : cachingChatMemoryStores) {
+            result.put(store.getName(), store.stats());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/migrate-entries")
+    @Operation(summary = "迁移聊天记录存储结构", description = "将chat_messages中的整段JSON记录迁移为按消息保存的子文档")
+    public ResponseEntity<Map<String, Object>> migrateEntries() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            long startTime = System.currentTimeMillis();
+            int migratedCount = entriesMongoChatMemoryStore.migrateAllLegacyContent();
+
+            result.put("success", true);
+            result.put("migratedCount", migratedCount);
+            result.put("duration", (System.currentTimeMillis() - startTime) + "ms");
+            result.put("timestamp", System.currentTimeMillis());
+
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", "迁移失败: " + e.getMessage());
+            result.put("timestamp", System.currentTimeMillis());
+
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+}
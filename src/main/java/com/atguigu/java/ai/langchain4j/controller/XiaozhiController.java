@@ -2,15 +2,23 @@ package com.atguigu.java.ai.langchain4j.controller;
 
 import com.atguigu.java.ai.langchain4j.assistant.XiaozhiAgent;
 import com.atguigu.java.ai.langchain4j.bean.ChatForm;
+import com.atguigu.java.ai.langchain4j.rag.SemanticAnswerCache;
+import com.atguigu.java.ai.langchain4j.stream.TokenStreamShaper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 @Tag(name = "硅谷小智")
 @RestController
 @RequestMapping("/xiaozhi")
@@ -18,16 +26,67 @@ public class XiaozhiController {
     @Autowired
     private XiaozhiAgent xiaozhiAgent;
     
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private TokenStreamShaper tokenStreamShaper;
+    
     @Operation(summary = "对话")
     @PostMapping(value = "/chat", produces = "text/stream;charset=utf-8")
     public Flux<String> chat(@RequestBody ChatForm chatForm) {
-        return xiaozhiAgent.chat(chatForm.getMemoryId(), chatForm.getMessage());
+        // token合并成分片后再写出，减少逐token写入和flush的开销
+        return tokenStreamShaper.coalesce(answer("chat", chatForm));
+    }
+    
+    @Operation(summary = "对话（SSE）")
+    @PostMapping(value = "/chat/sse", produces = "text/event-stream;charset=utf-8")
+    public Flux<ServerSentEvent<String>> chatSse(@RequestBody ChatForm chatForm) {
+        return tokenStreamShaper.toServerSentEvents(answer("chat-sse", chatForm));
+    }
+    
+    private Flux<String> answer(String endpoint, ChatForm chatForm) {
+        // 近似重复的无状态问题直接回放缓存的答案（需开启xiaozhi.answer-cache.enabled）
+        return timed(endpoint, semanticAnswerCache.chat(chatForm.getMemoryId(), chatForm.getMessage(),
+                () -> xiaozhiAgent.chat(chatForm.getMemoryId(), chatForm.getMessage())));
     }
     
     @Operation(summary = "对话（层级递归总结）")
     @PostMapping(value = "/chat-hierarchical", produces = "text/stream;charset=utf-8")
     public Flux<String> chatWithHierarchicalSummarization(@RequestBody ChatForm chatForm) {
-        return xiaozhiAgent.chatWithHierarchicalSummarization(chatForm.getMemoryId(), chatForm.getMessage());
+        return tokenStreamShaper.coalesce(timed("chat-hierarchical",
+                xiaozhiAgent.chatWithHierarchicalSummarization(chatForm.getMemoryId(), chatForm.getMessage())));
+    }
+    
+    /**
+     * 记录接口的首字延迟和总耗时，首字延迟减去模型首字延迟（xiaozhi.model.first.token）即为记忆加载、检索和提示词组装的耗时
+     */
+    private Flux<String> timed(String endpoint, Flux<String> answer) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean();
+            return answer
+                    .doOnNext(token -> {
+                        if (firstToken.compareAndSet(false, true)) {
+                            Timer.builder("xiaozhi.chat.first.token")
+                                    .description("对话接口首字延迟")
+                                    .tag("endpoint", endpoint)
+                                    .publishPercentiles(0.5, 0.95, 0.99)
+                                    .register(meterRegistry)
+                                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doFinally(signal -> Timer.builder("xiaozhi.chat.latency")
+                            .description("对话接口总耗时")
+                            .tag("endpoint", endpoint)
+                            .tag("signal", signal.name().toLowerCase())
+                            .publishPercentiles(0.5, 0.95, 0.99)
+                            .register(meterRegistry)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
     }
 //    @Operation(summary = "对话（带记忆压缩）")
 //    @PostMapping(value = "/chat-compressed", produces = "text/stream;charset=utf-8")
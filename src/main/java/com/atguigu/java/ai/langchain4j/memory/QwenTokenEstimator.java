@@ -0,0 +1,190 @@
+package com.atguigu.java.ai.langchain4j.memory;
+
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地估算Qwen系列模型的token数量，不调用远程分词接口
+ * 估算规则接近Qwen的BPE分词：汉字、假名、全角标点每个约1个token，数字逐位拆分，
+ * 连续的英文字母约4个字符1个token，每条消息另加角色标记的固定开销
+ * 同一条消息的估算结果会被缓存，记忆窗口每轮只需要计算新增的消息
+ */
+@Component
+public class QwenTokenEstimator {
+
+    /**
+     * 每条消息的固定开销：&lt;|im_start|&gt;、角色名、换行、&lt;|im_end|&gt;
+     */
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    /**
+     * 每个工具调用请求的固定开销：工具调用的包装格式
+     */
+    private static final int TOOL_REQUEST_OVERHEAD = 8;
+
+    @Autowired
+    private MemoryConfig memoryConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 消息到token数量的缓存，键为消息类型、内容哈希和内容长度，从数据库重新读取的消息同样可以命中；
+     * 不以消息本身作为键，缓存不会持有很长的工具结果原文，查找时也不需要逐字比较消息内容
+     */
+    private Cache<MessageKey, Integer> tokenCountCache;
+
+    @PostConstruct
+    public void initCache() {
+        tokenCountCache = Caffeine.newBuilder()
+                .maximumSize(memoryConfig.getTokenCacheMaxSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokenCountCache, "chat-message-tokens");
+    }
+
+    /**
+     * 估算一条消息的token数量（带缓存）
+     */
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return tokenCountCache.get(MessageKey.of(message), key -> estimateUncached(message));
+    }
+
+    /**
+     * 估算多条消息的token数量之和
+     */
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+
+    private int estimateUncached(ChatMessage message) {
+        int tokens = MESSAGE_OVERHEAD;
+        if (message instanceof SystemMessage systemMessage) {
+            tokens += estimateTokenCountInText(systemMessage.text());
+        } else if (message instanceof UserMessage userMessage) {
+            if (userMessage.name() != null) {
+                tokens += estimateTokenCountInText(userMessage.name());
+            }
+            for (Content content : userMessage.contents()) {
+                if (content instanceof TextContent textContent) {
+                    tokens += estimateTokenCountInText(textContent.text());
+                }
+            }
+        } else if (message instanceof AiMessage aiMessage) {
+            tokens += estimateTokenCountInText(aiMessage.text());
+            if (aiMessage.hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : aiMessage.toolExecutionRequests()) {
+                    tokens += TOOL_REQUEST_OVERHEAD
+                            + estimateTokenCountInText(request.name())
+                            + estimateTokenCountInText(request.arguments());
+                }
+            }
+        } else if (message instanceof ToolExecutionResultMessage toolResult) {
+            tokens += estimateTokenCountInText(toolResult.toolName())
+                    + estimateTokenCountInText(toolResult.text());
+        }
+        return tokens;
+    }
+
+    /**
+     * 参与估算的文本：用户名、文本内容、工具调用的名称和参数、工具名称和结果
+     */
+    private static List<String> textParts(ChatMessage message) {
+        List<String> parts = new ArrayList<>();
+        if (message instanceof SystemMessage systemMessage) {
+            parts.add(systemMessage.text());
+        } else if (message instanceof UserMessage userMessage) {
+            parts.add(userMessage.name());
+            for (Content content : userMessage.contents()) {
+                if (content instanceof TextContent textContent) {
+                    parts.add(textContent.text());
+                }
+            }
+        } else if (message instanceof AiMessage aiMessage) {
+            parts.add(aiMessage.text());
+            if (aiMessage.hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : aiMessage.toolExecutionRequests()) {
+                    parts.add(request.name());
+                    parts.add(request.arguments());
+                }
+            }
+        } else if (message instanceof ToolExecutionResultMessage toolResult) {
+            parts.add(toolResult.toolName());
+            parts.add(toolResult.text());
+        }
+        return parts;
+    }
+
+    /**
+     * token数量缓存的键：消息类型、各段文本哈希的组合和文本总长度
+     * 长度参与比较，哈希碰撞时只有长度也相同才会误用缓存结果，而估算值只用于截断记忆窗口，偶尔误差可以接受
+     */
+    record MessageKey(ChatMessageType type, long contentHash, int contentLength) {
+
+        static MessageKey of(ChatMessage message) {
+            long hash = 1;
+            int length = 0;
+            for (String part : textParts(message)) {
+                // 各段之间加入分隔，["ab", "c"]与["a", "bc"]得到不同的哈希
+                hash = 31 * hash + (part == null ? 0 : part.hashCode());
+                hash = 31 * hash + (part == null ? -1 : part.length());
+                length += part == null ? 0 : part.length();
+            }
+            return new MessageKey(message.type(), hash, length);
+        }
+    }
+
+    /**
+     * 估算一段文本的token数量
+     */
+    public static int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int letterRun = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isAsciiLetter(codePoint)) {
+                letterRun++;
+                continue;
+            }
+            // 英文单词结束，按约4个字符1个token计算
+            tokens += (letterRun + 3) / 4;
+            letterRun = 0;
+            if (!Character.isWhitespace(codePoint)) {
+                // 汉字、数字（逐位拆分）、标点和其他符号各计1个token
+                tokens++;
+            }
+        }
+        tokens += (letterRun + 3) / 4;
+        return tokens;
+    }
+
+    private static boolean isAsciiLetter(int codePoint) {
+        return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z');
+    }
+}
@@ -0,0 +1,111 @@
+package com.atguigu.java.ai.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 按token预算保留消息的记忆窗口
+ * 与MessageWindowChatMemory按消息条数截断不同，这里保证窗口内消息的估算token总数不超过预算，
+ * 一条很长的搜索工具结果不会让提示词长度成倍增长
+ * 超出预算时从最早的消息开始移出，系统消息始终保留
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private final Object id;
+
+    private final int maxTokens;
+
+    private final QwenTokenEstimator tokenEstimator;
+
+    private final ChatMemoryStore store;
+
+    public TokenBudgetChatMemory(Object id, int maxTokens, QwenTokenEstimator tokenEstimator, ChatMemoryStore store) {
+        this.id = id;
+        this.maxTokens = maxTokens;
+        this.tokenEstimator = tokenEstimator;
+        this.store = store;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        List<ChatMessage> messages = messages();
+        if (message instanceof SystemMessage) {
+            SystemMessage existing = findSystemMessage(messages);
+            if (message.equals(existing)) {
+                // 系统消息没有变化，不重复写入
+                return;
+            }
+            if (existing != null) {
+                messages.remove(existing);
+            }
+        }
+        messages.add(message);
+        ensureCapacity(messages);
+        store.updateMessages(id, messages);
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+        ensureCapacity(messages);
+        return messages;
+    }
+
+    @Override
+    public void clear() {
+        store.deleteMessages(id);
+    }
+
+    /**
+     * 从最早的非系统消息开始移出，直到总token数不超过预算
+     * 移出带工具调用的AI消息时，同时移出紧随其后的工具结果，避免留下没有调用请求的工具结果
+     */
+    private void ensureCapacity(List<ChatMessage> messages) {
+        int currentTokens = tokenEstimator.estimateTokenCountInMessages(messages);
+        while (currentTokens > maxTokens) {
+            int index = 0;
+            while (index < messages.size() && messages.get(index) instanceof SystemMessage) {
+                index++;
+            }
+            if (index >= messages.size() - 1) {
+                // 只剩最新的一条消息时保留，即使它本身超过预算
+                return;
+            }
+            ChatMessage evicted = messages.remove(index);
+            currentTokens -= tokenEstimator.estimateTokenCountInMessage(evicted);
+            if (evicted instanceof AiMessage aiMessage && aiMessage.hasToolExecutionRequests()) {
+                Iterator<ChatMessage> iterator = messages.listIterator(index);
+                while (iterator.hasNext()) {
+                    ChatMessage next = iterator.next();
+                    if (!(next instanceof ToolExecutionResultMessage)) {
+                        break;
+                    }
+                    iterator.remove();
+                    currentTokens -= tokenEstimator.estimateTokenCountInMessage(next);
+                }
+            }
+        }
+    }
+
+    private static SystemMessage findSystemMessage(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            if (message instanceof SystemMessage systemMessage) {
+                return systemMessage;
+            }
+        }
+        return null;
+    }
+}
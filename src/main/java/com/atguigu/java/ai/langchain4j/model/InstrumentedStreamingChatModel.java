@@ -0,0 +1,124 @@
+package com.atguigu.java.ai.langchain4j.model;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 记录首字延迟和token用量的流式模型（装饰器）
+ * 每次模型调用（包括工具调用后的再次调用）分别记录：从发出请求到第一个token的延迟、整次调用的耗时、输入输出token数量；
+ * 首字延迟只包含模型本身，不包含之前的记忆加载、知识库检索和提示词组装
+ */
+public class InstrumentedStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final StreamingChatLanguageModel delegate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String modelName;
+
+    private final Timer firstTokenTimer;
+
+    private final DistributionSummary inputTokens;
+
+    private final DistributionSummary outputTokens;
+
+    private final Counter toolCallResponses;
+
+    public InstrumentedStreamingChatModel(StreamingChatLanguageModel delegate, String modelName,
+                                          MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.modelName = modelName;
+        this.firstTokenTimer = Timer.builder("xiaozhi.model.first.token")
+                .description("模型首字延迟")
+                .tag("model", modelName)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.inputTokens = DistributionSummary.builder("xiaozhi.model.tokens")
+                .description("每次模型调用的token数量")
+                .tag("model", modelName)
+                .tag("type", "input")
+                .register(meterRegistry);
+        this.outputTokens = DistributionSummary.builder("xiaozhi.model.tokens")
+                .description("每次模型调用的token数量")
+                .tag("model", modelName)
+                .tag("type", "output")
+                .register(meterRegistry);
+        this.toolCallResponses = Counter.builder("xiaozhi.model.tool.calls")
+                .description("模型要求调用工具的次数")
+                .tag("model", modelName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        long start = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean();
+        delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (firstToken.compareAndSet(false, true)) {
+                    firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                handler.onPartialResponse(partialResponse);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                recordLatency(start, "success");
+                TokenUsage tokenUsage = completeResponse.tokenUsage();
+                if (tokenUsage != null) {
+                    if (tokenUsage.inputTokenCount() != null) {
+                        inputTokens.record(tokenUsage.inputTokenCount());
+                    }
+                    if (tokenUsage.outputTokenCount() != null) {
+                        outputTokens.record(tokenUsage.outputTokenCount());
+                    }
+                }
+                if (completeResponse.aiMessage() != null && completeResponse.aiMessage().hasToolExecutionRequests()) {
+                    toolCallResponses.increment();
+                }
+                handler.onCompleteResponse(completeResponse);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                recordLatency(start, "error");
+                handler.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    private void recordLatency(long start, String outcome) {
+        Timer.builder("xiaozhi.model.latency")
+                .description("模型调用总耗时")
+                .tag("model", modelName)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,188 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 多知识源并行检索
+ * 问题按路由规则分发到多个知识源（命名空间），各知识源同时检索，总耗时取决于最慢的知识源而不是各知识源耗时之和；
+ * 超过总时间预算仍未返回的知识源被忽略并中断其检索线程，只合并已返回的结果，单个知识源变慢或出错不影响其他知识源
+ * 只路由到一个知识源时没有可以并行的检索，直接在调用线程中检索，不受时间预算限制，与只有一个检索器时的行为相同
+ * 检索线程的任务队列有界，每个知识源同时进行的检索数量也有上限，变慢的知识源不会占满所有检索线程
+ * 各知识源的结果按倒数排名融合（RRF）合并，相同文本的片段只保留一次
+ */
+public class FanOutContentRetriever implements ContentRetriever, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutContentRetriever.class);
+
+    private final Map<String, ContentRetriever> sources;
+
+    private final Function<String, List<String>> router;
+
+    private final long budgetMillis;
+
+    private final int maxResults;
+
+    private final int rrfK;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int concurrencyPerSource;
+
+    /**
+     * 知识源名称 -> 该知识源剩余的并发检索许可
+     */
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * @param sources              知识源名称 -> 检索器
+     * @param router               根据问题选择要检索的知识源
+     * @param budgetMillis         总时间预算（毫秒）
+     * @param maxResults           合并后返回的最大片段数量
+     * @param rrfK                 倒数排名融合的平滑常数
+     * @param parallelism          检索线程数
+     * @param queueCapacity        等待检索线程的任务队列长度
+     * @param concurrencyPerSource 每个知识源同时进行的检索数量上限
+     */
+    public FanOutContentRetriever(Map<String, ContentRetriever> sources, Function<String, List<String>> router,
+                                  long budgetMillis, int maxResults, int rrfK, int parallelism,
+                                  int queueCapacity, int concurrencyPerSource) {
+        this.sources = sources;
+        this.router = router;
+        this.budgetMillis = budgetMillis;
+        this.maxResults = maxResults;
+        this.rrfK = rrfK;
+        this.concurrencyPerSource = Math.max(1, concurrencyPerSource);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(Math.max(1, parallelism), Math.max(1, parallelism), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "rag-retrieval-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<String> names = router.apply(query.text()).stream().filter(sources::containsKey).toList();
+        if (names.size() == 1) {
+            return merge(List.of(sources.get(names.get(0)).retrieve(query)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        Map<String, Future<List<Content>>> futures = new LinkedHashMap<>();
+        for (String name : names) {
+            Future<List<Content>> future = submit(name, sources.get(name), query);
+            if (future != null) {
+                futures.put(name, future);
+            }
+        }
+
+        List<List<Content>> results = new ArrayList<>(futures.size());
+        for (Map.Entry<String, Future<List<Content>>> entry : futures.entrySet()) {
+            // 所有知识源共享同一个截止时间
+            long remaining = deadline - System.nanoTime();
+            try {
+                results.add(entry.getValue().get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                logger.warn("知识源 {} 检索超过 {}ms，忽略其结果", entry.getKey(), budgetMillis);
+            } catch (ExecutionException e) {
+                logger.warn("知识源 {} 检索失败，忽略其结果: {}", entry.getKey(), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(future -> future.cancel(true));
+                break;
+            }
+        }
+        return merge(results);
+    }
+
+    /**
+     * 提交一个知识源的检索，该知识源的并发检索已达上限或任务队列已满时返回null
+     * 许可在检索真正结束时归还：被取消但不响应中断的检索仍占用许可；尚未开始就被取消的任务在取消时归还
+     */
+    private Future<List<Content>> submit(String name, ContentRetriever source, Query query) {
+        Semaphore bulkhead = bulkheads.computeIfAbsent(name, key -> new Semaphore(concurrencyPerSource));
+        if (!bulkhead.tryAcquire()) {
+            logger.warn("知识源 {} 同时进行的检索已达 {} 个，本次跳过", name, concurrencyPerSource);
+            return null;
+        }
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<List<Content>> task = new FutureTask<>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return List.of();
+            }
+            try {
+                return source.retrieve(query);
+            } finally {
+                bulkhead.release();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (claimed.compareAndSet(false, true)) {
+                    bulkhead.release();
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            logger.warn("检索任务队列已满，本次跳过知识源 {}", name);
+            return null;
+        }
+        return task;
+    }
+
+    /**
+     * 按倒数排名融合合并各知识源的结果
+     */
+    private List<Content> merge(List<List<Content>> results) {
+        if (results.size() == 1) {
+            List<Content> only = results.get(0);
+            return only.size() <= maxResults ? only : only.subList(0, maxResults);
+        }
+        Map<String, Content> contents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Content> result : results) {
+            for (int rank = 0; rank < result.size(); rank++) {
+                Content content = result.get(rank);
+                String key = content.textSegment().text();
+                contents.putIfAbsent(key, content);
+                scores.merge(key, 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(maxResults)
+                .map(entry -> contents.get(entry.getKey()))
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,123 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.config.RagConfig;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关键词与向量混合检索
+ * 向量检索和倒排索引各自召回一批候选，按倒数排名融合（RRF）合并，再由本地重排序选出最终片段
+ * 向量库不可用时只使用关键词检索的结果
+ * 每个实例只检索一个知识库命名空间
+ */
+public class HybridContentRetriever implements ContentRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridContentRetriever.class);
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final LexicalSegmentIndex lexicalSegmentIndex;
+
+    private final LocalReranker reranker;
+
+    private final RagConfig ragConfig;
+
+    private final String namespace;
+
+    /**
+     * @param namespace 倒排索引中检索的命名空间，为null时检索全部片段
+     */
+    public HybridContentRetriever(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel,
+                                  LexicalSegmentIndex lexicalSegmentIndex, LocalReranker reranker, RagConfig ragConfig,
+                                  String namespace) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.lexicalSegmentIndex = lexicalSegmentIndex;
+        this.reranker = reranker;
+        this.ragConfig = ragConfig;
+        this.namespace = namespace;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        String text = query.text();
+        Map<String, Fused> fused = new LinkedHashMap<>();
+
+        List<EmbeddingMatch<TextSegment>> vectorMatches = searchVectors(text);
+        for (int rank = 0; rank < vectorMatches.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = vectorMatches.get(rank);
+            if (match.embedded() != null) {
+                fuse(fused, match.embeddingId(), match.embedded(), rank);
+            }
+        }
+        List<LexicalSegmentIndex.Hit> lexicalHits = lexicalSegmentIndex.search(text, ragConfig.getLexicalCandidates(), namespace);
+        for (int rank = 0; rank < lexicalHits.size(); rank++) {
+            LexicalSegmentIndex.Hit hit = lexicalHits.get(rank);
+            fuse(fused, hit.id(), hit.segment(), rank);
+        }
+        if (fused.isEmpty()) {
+            return List.of();
+        }
+
+        // 两路都排第一时RRF得分最高，以此归一化到[0, 1]
+        double maxFusion = 2.0 / (ragConfig.getRrfK() + 1);
+        List<LocalReranker.Candidate> candidates = new ArrayList<>(fused.size());
+        for (Map.Entry<String, Fused> entry : fused.entrySet()) {
+            candidates.add(new LocalReranker.Candidate(entry.getKey(), entry.getValue().segment,
+                    entry.getValue().score / maxFusion));
+        }
+        List<Content> contents = new ArrayList<>();
+        for (LocalReranker.Ranked ranked : reranker.rerank(text, candidates)) {
+            if (contents.size() >= ragConfig.getMaxResults() || ranked.score() < ragConfig.getMinScore()) {
+                break;
+            }
+            contents.add(Content.from(ranked.segment()));
+        }
+        return contents;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> searchVectors(String text) {
+        try {
+            Embedding embedding = embeddingModel.embed(text).content();
+            return embeddingStore.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(embedding)
+                    .maxResults(ragConfig.getVectorCandidates())
+                    .minScore(ragConfig.getVectorMinScore())
+                    .build()).matches();
+        } catch (Exception e) {
+            logger.warn("向量检索失败，只使用关键词检索结果: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void fuse(Map<String, Fused> fused, String id, TextSegment segment, int rank) {
+        fused.computeIfAbsent(id, key -> new Fused(segment)).score += 1.0 / (ragConfig.getRrfK() + rank + 1);
+    }
+
+    private static final class Fused {
+
+        private final TextSegment segment;
+
+        private double score;
+
+        private Fused(TextSegment segment) {
+            this.segment = segment;
+        }
+    }
+}
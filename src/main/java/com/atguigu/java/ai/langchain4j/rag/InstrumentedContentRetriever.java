@@ -0,0 +1,58 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+
+/**
+ * 记录耗时的检索器（装饰器）
+ * 按知识源记录一次检索的总耗时（问题向量化、向量检索、关键词检索和重排序）、返回的片段数量以及没有命中任何片段的次数
+ */
+public class InstrumentedContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever delegate;
+
+    private final Timer timer;
+
+    private final DistributionSummary contents;
+
+    private final Counter empty;
+
+    /**
+     * @param source        知识源名称，作为指标标签
+     * @param delegate      实际的检索器
+     * @param meterRegistry 指标注册
+     */
+    public InstrumentedContentRetriever(String source, ContentRetriever delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timer = Timer.builder("xiaozhi.rag.retrieve.latency")
+                .description("知识库检索耗时")
+                .tag("source", source)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.contents = DistributionSummary.builder("xiaozhi.rag.retrieve.contents")
+                .description("每次检索返回的片段数量")
+                .tag("source", source)
+                .register(meterRegistry);
+        this.empty = Counter.builder("xiaozhi.rag.retrieve.empty")
+                .description("没有检索到任何片段的次数")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<Content> result = timer.record(() -> delegate.retrieve(query));
+        contents.record(result.size());
+        if (result.isEmpty()) {
+            empty.increment();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+/**
+ * 知识库片段有新增或删除时发布的事件，用于让依赖知识库内容的缓存失效
+ */
+public class KnowledgeBaseChangedEvent {
+
+    private final int addedSegments;
+
+    private final int removedSegments;
+
+    public KnowledgeBaseChangedEvent(int addedSegments, int removedSegments) {
+        this.addedSegments = addedSegments;
+        this.removedSegments = removedSegments;
+    }
+
+    public int getAddedSegments() {
+        return addedSegments;
+    }
+
+    public int getRemovedSegments() {
+        return removedSegments;
+    }
+}
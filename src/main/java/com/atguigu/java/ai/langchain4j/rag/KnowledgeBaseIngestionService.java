@@ -0,0 +1,469 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.bean.KnowledgeFileManifest;
+import com.atguigu.java.ai.langchain4j.bean.KnowledgeSegment;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 知识库增量导入
+ * 扫描知识库目录下的md、txt、pdf文件，与MongoDB中的导入清单比对：
+ * 大小和修改时间都没变的文件直接跳过，内容摘要没变的文件只更新清单；
+ * 变化的文件并行解析和切分，片段ID由文件路径和片段内容确定，只有新增的片段才需要计算向量并写入，
+ * 不再存在的片段和已删除文件的片段从向量库中删除
+ * 片段文本同时保存在knowledge_segments集合和内存倒排索引中，供混合检索的关键词召回使用
+ * 每个文件按路径归入一个命名空间，片段写入该命名空间的向量存储；文件改归其他命名空间时整体迁移
+ * 清单记录片段所在的向量存储类型和标识，切换向量存储或本地索引的已有数据被忽略后，文件的片段全部重新写入
+ */
+@Component
+public class KnowledgeBaseIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeBaseIngestionService.class);
+
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of("md", "txt", "pdf");
+
+    @Autowired
+    private KnowledgeNamespaces knowledgeNamespaces;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private LexicalSegmentIndex lexicalSegmentIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${knowledge.base.path:knowledge/knowledge}")
+    private String basePath;
+
+    @Value("${knowledge.ingest.parallelism:4}")
+    private int parallelism;
+
+    @Value("${knowledge.ingest.embed-batch-size:32}")
+    private int embedBatchSize;
+
+    @Value("${knowledge.ingest.max-segment-chars:300}")
+    private int maxSegmentChars;
+
+    @Value("${knowledge.ingest.max-overlap-chars:30}")
+    private int maxOverlapChars;
+
+    /**
+     * 解析、切分和计算向量的线程池
+     */
+    private ExecutorService ingestExecutor;
+
+    /**
+     * 同一时间只允许一次导入，启动导入和目录监听触发的导入不会交叠
+     */
+    private final ReentrantLock ingestLock = new ReentrantLock();
+
+    @PostConstruct
+    public void initIngestExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ingestExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-ingest-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadLexicalIndex();
+    }
+
+    /**
+     * 启动时从knowledge_segments集合加载倒排索引
+     */
+    private void loadLexicalIndex() {
+        try (Stream<KnowledgeSegment> stream = mongoTemplate.stream(new Query(), KnowledgeSegment.class)) {
+            stream.forEach(segment -> lexicalSegmentIndex.upsert(segment.getSegmentId(), toTextSegment(segment)));
+        } catch (Exception e) {
+            logger.error("加载知识库倒排索引失败: {}", e.getMessage(), e);
+        }
+        logger.info("知识库倒排索引加载完成，片段数量 {}", lexicalSegmentIndex.size());
+    }
+
+    @PreDestroy
+    public void shutdownIngestExecutor() {
+        ingestExecutor.shutdownNow();
+    }
+
+    public Path getBaseDirectory() {
+        return Path.of(basePath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 扫描整个知识库目录并增量导入
+     *
+     * @return 导入统计
+     */
+    public IngestionReport ingest() {
+        ingestLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            Path baseDirectory = getBaseDirectory();
+            if (!Files.isDirectory(baseDirectory)) {
+                logger.warn("知识库目录不存在: {}", baseDirectory);
+                return new IngestionReport(0, 0, 0, 0, 0, 0);
+            }
+            Map<String, KnowledgeFileManifest> manifests = mongoTemplate.findAll(KnowledgeFileManifest.class).stream()
+                    .collect(Collectors.toMap(KnowledgeFileManifest::getPath, manifest -> manifest));
+
+            // 已有导入清单但片段文本还没有保存过（升级前导入的数据），重新切分所有文件补齐片段文本
+            boolean backfill = !manifests.isEmpty() && !mongoTemplate.exists(new Query(), KnowledgeSegment.class);
+
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(baseDirectory)) {
+                files = stream.filter(Files::isRegularFile).filter(KnowledgeBaseIngestionService::isSupported).toList();
+            }
+
+            // 并行比对和解析变化的文件
+            List<CompletableFuture<FileChange>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                String relativePath = relativePath(baseDirectory, file);
+                KnowledgeFileManifest manifest = manifests.remove(relativePath);
+                futures.add(CompletableFuture.supplyAsync(() -> detectChange(file, relativePath, manifest, backfill), ingestExecutor));
+            }
+            List<FileChange> changes = new ArrayList<>();
+            int failedFiles = 0;
+            for (CompletableFuture<FileChange> future : futures) {
+                try {
+                    FileChange change = future.join();
+                    if (change != null) {
+                        changes.add(change);
+                    }
+                } catch (Exception e) {
+                    failedFiles++;
+                    logger.error("解析知识库文件失败: {}", e.getMessage(), e);
+                }
+            }
+
+            ApplyResult result = applyChanges(changes, manifests.values());
+
+            IngestionReport report = new IngestionReport(files.size(), changes.size(), manifests.size(),
+                    result.addedSegments(), result.removedSegments(), failedFiles);
+            logger.info("知识库导入完成，耗时 {}ms，{}", System.currentTimeMillis() - start, report);
+            return report;
+        } catch (IOException e) {
+            throw new UncheckedIOException("扫描知识库目录失败", e);
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * 只导入单个文件：文件被修改时替换它的片段，文件被删除或不再是支持的类型时删除它的片段
+     *
+     * @param file 知识库目录下的文件
+     * @return 导入统计
+     */
+    public IngestionReport ingestFile(Path file) {
+        ingestLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            Path baseDirectory = getBaseDirectory();
+            Path absoluteFile = file.toAbsolutePath().normalize();
+            if (!absoluteFile.startsWith(baseDirectory)) {
+                throw new IllegalArgumentException("文件不在知识库目录下: " + file);
+            }
+            String relativePath = relativePath(baseDirectory, absoluteFile);
+            KnowledgeFileManifest manifest = mongoTemplate.findById(relativePath, KnowledgeFileManifest.class);
+            boolean exists = Files.isRegularFile(absoluteFile) && isSupported(absoluteFile);
+
+            List<FileChange> changes = new ArrayList<>();
+            if (exists) {
+                FileChange change = detectChange(absoluteFile, relativePath, manifest, false);
+                if (change != null) {
+                    changes.add(change);
+                }
+            }
+            List<KnowledgeFileManifest> deleted = !exists && manifest != null ? List.of(manifest) : List.of();
+            ApplyResult result = applyChanges(changes, deleted);
+
+            IngestionReport report = new IngestionReport(exists ? 1 : 0, changes.size(), deleted.size(),
+                    result.addedSegments(), result.removedSegments(), 0);
+            logger.info("知识库文件 {} 导入完成，耗时 {}ms，{}", relativePath, System.currentTimeMillis() - start, report);
+            return report;
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * 写入变化：新增的片段分批计算向量并写入，全部写入成功后再删除旧片段并保存清单，
+     * 片段文本和倒排索引随之更新，
+     * 文件的新旧片段替换过程中检索不会出现空窗；中途失败时清单不更新，下次导入会重新处理
+     * 本地向量索引按间隔批量保存，保存清单之前先保存向量索引
+     */
+    private ApplyResult applyChanges(List<FileChange> changes, Collection<KnowledgeFileManifest> deletedManifests) {
+        List<PendingSegment> pending = new ArrayList<>();
+        for (FileChange change : changes) {
+            pending.addAll(change.added());
+        }
+        embedAndStore(pending);
+
+        int removedSegments = 0;
+        // 先删除再写入片段文本：迁移命名空间时删除和写入的是相同的片段ID
+        for (FileChange change : changes) {
+            removedSegments += removeSegments(change.removedNamespace(), change.removedIds());
+        }
+        knowledgeNamespaces.flushStores();
+        for (FileChange change : changes) {
+            for (PendingSegment segment : change.segments()) {
+                mongoTemplate.save(new KnowledgeSegment(segment.id(), change.manifest().getPath(),
+                        segment.segment().text(), segment.segment().metadata().toMap()));
+                lexicalSegmentIndex.upsert(segment.id(), segment.segment());
+            }
+            mongoTemplate.save(change.manifest());
+        }
+        // 清单中有而目录中已经不存在的文件
+        for (KnowledgeFileManifest deleted : deletedManifests) {
+            removedSegments += removeSegments(deleted.getNamespace(),
+                    deleted.getSegments() == null ? List.of() : deleted.getSegments().keySet());
+        }
+        if (!deletedManifests.isEmpty()) {
+            knowledgeNamespaces.flushStores();
+        }
+        for (KnowledgeFileManifest deleted : deletedManifests) {
+            mongoTemplate.remove(deleted);
+        }
+        if (!pending.isEmpty() || removedSegments > 0) {
+            eventPublisher.publishEvent(new KnowledgeBaseChangedEvent(pending.size(), removedSegments));
+        }
+        return new ApplyResult(pending.size(), removedSegments);
+    }
+
+    /**
+     * 比对文件与导入清单，有变化时解析切分并计算新增和删除的片段
+     *
+     * @param force 为true时即使文件没有变化也重新切分，用于补齐片段文本
+     * @return 没有需要写入的变化时返回null
+     */
+    private FileChange detectChange(Path file, String relativePath, KnowledgeFileManifest manifest, boolean force) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String namespace = knowledgeNamespaces.namespaceOf(relativePath);
+            String storedNamespace = manifest == null || manifest.getNamespace() == null
+                    ? KnowledgeNamespaces.DEFAULT : manifest.getNamespace();
+            // 命名空间配置变化后，文件的所有片段需要迁移到新的向量存储
+            boolean moved = manifest != null && !namespace.equals(storedNamespace);
+            Map<String, String> storedSegments = manifest == null || manifest.getSegments() == null
+                    ? Map.of() : manifest.getSegments();
+            String storeType = knowledgeNamespaces.storeType(namespace);
+            String storeId = knowledgeNamespaces.storeId(namespace);
+            // 清单记录的片段已不在当前向量存储中：切换了向量存储类型、本地索引的已有数据被忽略，或者向量存储为空
+            boolean storeChanged = manifest != null && (!storedSegments.isEmpty() && knowledgeNamespaces.isStoreEmpty(namespace)
+                    || manifest.getStoreId() != null
+                    && (!storeType.equals(manifest.getStoreType()) || !storeId.equals(manifest.getStoreId())));
+            force = force || moved || storeChanged;
+            // 升级前的清单没有记录向量存储，比对一次内容摘要后补齐
+            if (!force && manifest != null && manifest.getStoreId() != null
+                    && manifest.getSize() == size && manifest.getLastModified() == lastModified) {
+                return null;
+            }
+            String fingerprint = fingerprint(file);
+            // 迁移时旧存储中的片段全部删除，新存储中的片段全部重新写入；向量存储变化时片段全部重新写入
+            Map<String, String> reusableSegments = moved || storeChanged ? Map.of() : storedSegments;
+            if (!force && manifest != null && fingerprint.equals(manifest.getFingerprint())) {
+                // 只是修改时间变化（例如文件被复制），内容相同，只更新清单
+                return new FileChange(new KnowledgeFileManifest(relativePath, size, lastModified, fingerprint,
+                        storedSegments, new Date(), namespace, storeType, storeId), List.of(), List.of(), storedNamespace, List.of());
+            }
+
+            Document document = FileSystemDocumentLoader.loadDocument(file, parserFor(file));
+            document.metadata().put("file_path", relativePath);
+            document.metadata().put("file_hash", fingerprint);
+            document.metadata().put("namespace", namespace);
+            DocumentSplitter splitter = DocumentSplitters.recursive(maxSegmentChars, maxOverlapChars);
+
+            Map<String, String> segments = new LinkedHashMap<>();
+            List<PendingSegment> all = new ArrayList<>();
+            List<PendingSegment> added = new ArrayList<>();
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (TextSegment segment : splitter.split(document)) {
+                String segmentHash = sha256(segment.text());
+                // 同一文件中重复的片段用出现次数区分
+                int occurrence = occurrences.merge(segmentHash, 1, Integer::sum);
+                String id = UUID.nameUUIDFromBytes((relativePath + "|" + segmentHash + "|" + occurrence)
+                        .getBytes(StandardCharsets.UTF_8)).toString();
+                segments.put(id, segmentHash);
+                Metadata metadata = segment.metadata().copy().put("segment_id", id);
+                PendingSegment pending = new PendingSegment(id, namespace, TextSegment.from(segment.text(), metadata));
+                all.add(pending);
+                if (!reusableSegments.containsKey(id)) {
+                    added.add(pending);
+                }
+            }
+            // 新片段先写入再删除旧片段，同一存储中重新写入的片段不能删除
+            List<String> removedIds = storedSegments.keySet().stream()
+                    .filter(id -> moved || !segments.containsKey(id)).toList();
+            logger.info("知识库文件 {} 有变化，命名空间 {}，新增片段 {}，删除片段 {}{}",
+                    relativePath, namespace, added.size(), removedIds.size(), storeChanged ? "，向量存储已变化" : "");
+            return new FileChange(new KnowledgeFileManifest(relativePath, size, lastModified, fingerprint, segments,
+                    new Date(), namespace, storeType, storeId), all, added, storedNamespace, removedIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取知识库文件失败: " + relativePath, e);
+        }
+    }
+
+    /**
+     * 按命名空间分组，分批计算向量并写入对应的向量库，批次之间并行
+     */
+    private void embedAndStore(List<PendingSegment> pending) {
+        int batchSize = Math.max(1, embedBatchSize);
+        Map<String, List<PendingSegment>> byNamespace = pending.stream()
+                .collect(Collectors.groupingBy(PendingSegment::namespace, LinkedHashMap::new, Collectors.toList()));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, List<PendingSegment>> entry : byNamespace.entrySet()) {
+            EmbeddingStore<TextSegment> store = knowledgeNamespaces.store(entry.getKey());
+            List<PendingSegment> namespaceSegments = entry.getValue();
+            for (int start = 0; start < namespaceSegments.size(); start += batchSize) {
+                List<PendingSegment> batch = namespaceSegments.subList(start, Math.min(namespaceSegments.size(), start + batchSize));
+                futures.add(CompletableFuture.runAsync(() -> {
+                    List<TextSegment> segments = batch.stream().map(PendingSegment::segment).toList();
+                    List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+                    store.addAll(batch.stream().map(PendingSegment::id).toList(), embeddings, segments);
+                }, ingestExecutor));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private int removeSegments(String namespace, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        knowledgeNamespaces.store(namespace).removeAll(ids);
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), KnowledgeSegment.class);
+        lexicalSegmentIndex.removeAll(ids);
+        return ids.size();
+    }
+
+    private static DocumentParser parserFor(Path file) {
+        return "pdf".equals(extension(file)) ? new ApachePdfBoxDocumentParser() : new TextDocumentParser();
+    }
+
+    static boolean isSupported(Path file) {
+        return SUPPORTED_EXTENSIONS.contains(extension(file));
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    static String relativePath(Path baseDirectory, Path file) {
+        // 统一使用/作为分隔符，Windows和Linux上生成相同的清单和片段ID
+        return baseDirectory.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static String fingerprint(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static TextSegment toTextSegment(KnowledgeSegment segment) {
+        return TextSegment.from(segment.getText(),
+                segment.getMetadata() == null ? new Metadata() : Metadata.from(segment.getMetadata()));
+    }
+
+    /**
+     * 一个文件的变化：新的清单、切分后的全部片段、需要计算向量的新片段、需要删除的片段所在的命名空间及ID
+     */
+    private record FileChange(KnowledgeFileManifest manifest, List<PendingSegment> segments,
+                              List<PendingSegment> added, String removedNamespace, List<String> removedIds) {
+    }
+
+    private record PendingSegment(String id, String namespace, TextSegment segment) {
+    }
+
+    private record ApplyResult(int addedSegments, int removedSegments) {
+    }
+
+    /**
+     * 导入统计
+     *
+     * @param scannedFiles    扫描到的文件数量
+     * @param changedFiles    有变化的文件数量
+     * @param deletedFiles    已删除的文件数量
+     * @param addedSegments   新写入的片段数量
+     * @param removedSegments 删除的片段数量
+     * @param failedFiles     解析失败的文件数量
+     */
+    public record IngestionReport(int scannedFiles, int changedFiles, int deletedFiles,
+                                  int addedSegments, int removedSegments, int failedFiles) {
+    }
+}
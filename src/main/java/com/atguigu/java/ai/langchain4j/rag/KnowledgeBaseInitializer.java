@@ -0,0 +1,40 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时增量导入知识库
+ * 在后台线程中执行，不阻塞应用启动；未变化的文件只做一次元数据比对
+ */
+@Component
+public class KnowledgeBaseInitializer implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeBaseInitializer.class);
+
+    @Autowired
+    private KnowledgeBaseIngestionService knowledgeBaseIngestionService;
+
+    @Value("${knowledge.auto.init:true}")
+    private boolean autoInit;
+
+    @Override
+    public void run(String... args) {
+        if (!autoInit) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                knowledgeBaseIngestionService.ingest();
+            } catch (Exception e) {
+                logger.error("启动时导入知识库失败: {}", e.getMessage(), e);
+            }
+        }, "knowledge-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,195 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 监听知识库目录，文件变化后只重新导入该文件
+ * 编辑器保存一个文件通常会产生多个事件，同一文件在debounce时间内的事件合并为一次导入；
+ * 事件溢出（丢失）时退回整个目录的增量导入，整体扫描会覆盖所有文件，尚未执行的单文件导入随之取消
+ */
+@Component
+public class KnowledgeBaseWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeBaseWatcher.class);
+
+    @Autowired
+    private KnowledgeBaseIngestionService knowledgeBaseIngestionService;
+
+    @Value("${knowledge.watch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.watch.debounce-ms:1500}")
+    private long debounceMs;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    /**
+     * 执行导入的单线程调度器，导入按顺序执行
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 等待执行的导入，键为文件；Optional.empty()表示整个目录的增量导入
+     */
+    private final Map<Optional<Path>, PendingReindex> pending = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Path baseDirectory = knowledgeBaseIngestionService.getBaseDirectory();
+        if (!Files.isDirectory(baseDirectory)) {
+            logger.warn("知识库目录不存在，不启动目录监听: {}", baseDirectory);
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerAll(baseDirectory);
+        } catch (IOException e) {
+            logger.error("启动知识库目录监听失败: {}", e.getMessage(), e);
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-reindex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchThread = new Thread(this::watchLoop, "knowledge-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("已启动知识库目录监听: {}", baseDirectory);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("关闭知识库目录监听失败: {}", e.getMessage());
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    schedule(Optional.empty());
+                    continue;
+                }
+                Path changed = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    // WatchService不递归，新建的子目录需要单独注册，其中已有的文件由整体扫描导入
+                    try {
+                        registerAll(changed);
+                    } catch (IOException e) {
+                        logger.warn("注册知识库子目录监听失败: {}", e.getMessage());
+                    }
+                    schedule(Optional.empty());
+                } else if (KnowledgeBaseIngestionService.isSupported(changed)) {
+                    schedule(Optional.of(changed));
+                }
+            }
+            if (!key.reset()) {
+                // 目录被删除，其中文件的片段由整体扫描清理
+                directories.remove(key);
+                schedule(Optional.empty());
+            }
+        }
+    }
+
+    /**
+     * 同一文件在debounce时间内再次变化时取消上一次的导入，重新计时；
+     * 安排整体扫描时取消所有尚未执行的单文件导入
+     *
+     * @param file 变化的文件，Optional.empty()表示整个目录
+     */
+    private void schedule(Optional<Path> file) {
+        if (file.isEmpty()) {
+            pending.forEach((key, task) -> {
+                if (key.isPresent() && pending.remove(key, task)) {
+                    task.future.cancel(false);
+                }
+            });
+        }
+        pending.compute(file, (key, previous) -> {
+            if (previous != null) {
+                previous.future.cancel(false);
+            }
+            PendingReindex task = new PendingReindex();
+            task.future = scheduler.schedule(() -> reindex(key, task), debounceMs, TimeUnit.MILLISECONDS);
+            return task;
+        });
+    }
+
+    private void reindex(Optional<Path> file, PendingReindex task) {
+        // 只移除本次安排的导入；执行前又有新的变化时，新安排的导入保留在pending中
+        pending.remove(file, task);
+        try {
+            if (file.isPresent()) {
+                knowledgeBaseIngestionService.ingestFile(file.get());
+            } else {
+                knowledgeBaseIngestionService.ingest();
+            }
+        } catch (Exception e) {
+            logger.error("重新导入知识库文件 {} 失败: {}", file.map(Path::toString).orElse("（整个目录）"), e.getMessage(), e);
+        }
+    }
+
+    private void registerAll(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) stream.filter(Files::isDirectory)::iterator) {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+            }
+        }
+    }
+
+    /**
+     * 一次安排的导入，按对象身份区分，避免执行时误删后来重新安排的导入
+     */
+    private static final class PendingReindex {
+
+        private volatile ScheduledFuture<?> future;
+    }
+}
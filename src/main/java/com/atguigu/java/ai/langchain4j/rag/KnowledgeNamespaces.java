@@ -0,0 +1,161 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.config.EmbeddingStoreConfig;
+import com.atguigu.java.ai.langchain4j.config.RagConfig;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 知识库命名空间
+ * 按文件路径把知识库文件划分到不同的命名空间（例如医院信息、科室信息、各科室文档），每个命名空间使用单独的向量存储，
+ * 检索时按问题中的关键词路由到相关的命名空间
+ */
+@Component
+public class KnowledgeNamespaces {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeNamespaces.class);
+
+    public static final String DEFAULT = "default";
+
+    @Autowired
+    private RagConfig ragConfig;
+
+    @Autowired
+    private EmbeddingStore<TextSegment> embeddingStore;
+
+    @Autowired
+    private EmbeddingStoreConfig embeddingStoreConfig;
+
+    private final Map<String, EmbeddingStore<TextSegment>> stores = new ConcurrentHashMap<>();
+
+    private final Map<String, PathMatcher> matchers = new ConcurrentHashMap<>();
+
+    /**
+     * 所有命名空间，default在最前面
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT);
+        for (String name : ragConfig.getNamespaces().keySet()) {
+            if (!DEFAULT.equals(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 文件所属的命名空间，按配置顺序取第一个匹配的
+     *
+     * @param relativePath 相对于知识库目录的路径，以/分隔
+     */
+    public String namespaceOf(String relativePath) {
+        Path path = Path.of(relativePath);
+        for (Map.Entry<String, RagConfig.Namespace> entry : ragConfig.getNamespaces().entrySet()) {
+            for (String pattern : entry.getValue().getPaths()) {
+                PathMatcher matcher = matchers.computeIfAbsent(pattern,
+                        glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob));
+                if (matcher.matches(path)) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * 命名空间对应的向量存储，default使用原有的向量存储
+     */
+    public EmbeddingStore<TextSegment> store(String namespace) {
+        if (namespace == null || DEFAULT.equals(namespace)) {
+            return embeddingStore;
+        }
+        return stores.computeIfAbsent(namespace, embeddingStoreConfig::createEmbeddingStore);
+    }
+
+    /**
+     * 命名空间当前使用的向量存储类型：local或pinecone
+     */
+    public String storeType(String namespace) {
+        return store(namespace) instanceof HnswEmbeddingStore ? "local" : "pinecone";
+    }
+
+    /**
+     * 命名空间当前向量存储的标识：本地索引重建或已有数据被忽略后标识随之变化；Pinecone使用名称空间
+     */
+    public String storeId(String namespace) {
+        if (store(namespace) instanceof HnswEmbeddingStore hnswEmbeddingStore) {
+            return hnswEmbeddingStore.storeId();
+        }
+        return embeddingStoreConfig.pineconeNamespace(namespace == null || DEFAULT.equals(namespace) ? null : namespace);
+    }
+
+    /**
+     * 命名空间的向量存储是否确定为空，只有本地索引能直接判断
+     */
+    public boolean isStoreEmpty(String namespace) {
+        return store(namespace) instanceof HnswEmbeddingStore hnswEmbeddingStore && hnswEmbeddingStore.count() == 0;
+    }
+
+    /**
+     * 按问题路由：没有配置关键词的命名空间总是检索；配置了关键词的命名空间只在问题包含关键词时检索，
+     * 如果没有任何关键词被命中，则检索全部命名空间
+     */
+    public List<String> route(String query) {
+        List<String> always = new ArrayList<>();
+        List<String> matched = new ArrayList<>();
+        for (String name : names()) {
+            RagConfig.Namespace namespace = ragConfig.getNamespaces().get(name);
+            if (namespace == null || namespace.getKeywords().isEmpty()) {
+                always.add(name);
+            } else if (query != null && namespace.getKeywords().stream().anyMatch(query::contains)) {
+                matched.add(name);
+            }
+        }
+        if (matched.isEmpty()) {
+            return names();
+        }
+        always.addAll(matched);
+        return always;
+    }
+
+    /**
+     * 立即保存所有本地向量索引中尚未保存的写入，导入清单在此之后保存，重启后不会出现清单已更新而向量缺失的情况
+     */
+    public void flushStores() {
+        List<EmbeddingStore<TextSegment>> all = new ArrayList<>(stores.values());
+        all.add(embeddingStore);
+        for (EmbeddingStore<TextSegment> store : all) {
+            if (store instanceof HnswEmbeddingStore hnswEmbeddingStore) {
+                hnswEmbeddingStore.flush();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeStores() {
+        for (Map.Entry<String, EmbeddingStore<TextSegment>> entry : stores.entrySet()) {
+            if (entry.getValue() instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    logger.warn("关闭命名空间 {} 的向量存储失败: {}", entry.getKey(), e.getMessage());
+                }
+            }
+        }
+    }
+}
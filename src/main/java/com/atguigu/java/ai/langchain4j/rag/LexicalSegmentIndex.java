@@ -0,0 +1,247 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.search.CjkBigramTokenizer;
+import dev.langchain4j.data.segment.TextSegment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 知识库片段的内存倒排索引
+ * 使用与搜索结果打分相同的二元分词，按BM25计算得分（带逆文档频率），
+ * 用于补充向量检索：医生姓名、电话号码这类精确词在向量空间里不一定相近，但在倒排索引中一定能命中
+ * 删除为逻辑删除，已删除的片段超过一半时重建索引
+ */
+@Component
+public class LexicalSegmentIndex {
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    /**
+     * 每个片段所在的命名空间，元数据中没有命名空间的片段属于default
+     */
+    private final List<String> namespaces = new ArrayList<>();
+
+    private int[] lengths = new int[64];
+
+    private final BitSet deleted = new BitSet();
+
+    private final Map<String, Integer> docById = new HashMap<>();
+
+    /**
+     * 词 -> 倒排列表，列表中依次为片段编号和词频
+     */
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    private long totalLength;
+
+    /**
+     * 检索结果
+     *
+     * @param id      片段ID
+     * @param segment 片段
+     * @param score   BM25得分
+     */
+    public record Hit(String id, TextSegment segment, double score) {
+    }
+
+    /**
+     * 写入或替换片段
+     */
+    public void upsert(String id, TextSegment segment) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = docById.remove(id);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+            index(id, segment);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> removedIds) {
+        lock.writeLock().lock();
+        try {
+            for (String id : removedIds) {
+                Integer doc = docById.remove(id);
+                if (doc != null) {
+                    markDeleted(doc);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检索得分最高的片段
+     *
+     * @param query      查询语句
+     * @param maxResults 最大结果数量
+     * @return 按得分从高到低排列的结果
+     */
+    public List<Hit> search(String query, int maxResults) {
+        return search(query, maxResults, null);
+    }
+
+    /**
+     * 在一个命名空间内检索得分最高的片段
+     *
+     * @param query      查询语句
+     * @param maxResults 最大结果数量
+     * @param namespace  命名空间，为null时检索全部片段
+     * @return 按得分从高到低排列的结果
+     */
+    public List<Hit> search(String query, int maxResults, String namespace) {
+        Map<Long, Integer> queryTerms = termFrequencies(query);
+        lock.readLock().lock();
+        try {
+            int documentCount = docById.size();
+            if (documentCount == 0 || queryTerms.isEmpty()) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / documentCount;
+            Map<Integer, Double> scores = new HashMap<>();
+            for (Long term : queryTerms.keySet()) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                int documentFrequency = 0;
+                for (int i = 0; i < list.size; i += 2) {
+                    if (!deleted.get(list.data[i])) {
+                        documentFrequency++;
+                    }
+                }
+                double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < list.size; i += 2) {
+                    int doc = list.data[i];
+                    if (deleted.get(doc) || (namespace != null && !namespace.equals(namespaces.get(doc)))) {
+                        continue;
+                    }
+                    int frequency = list.data[i + 1];
+                    double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    scores.merge(doc, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                }
+            }
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                top.add(entry);
+                if (top.size() > maxResults) {
+                    top.poll();
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top.size());
+            for (Map.Entry<Integer, Double> entry : top) {
+                hits.add(new Hit(ids.get(entry.getKey()), segments.get(entry.getKey()), entry.getValue()));
+            }
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(String id, TextSegment segment) {
+        int doc = ids.size();
+        ids.add(id);
+        segments.add(segment);
+        String namespace = segment.metadata().getString("namespace");
+        namespaces.add(namespace == null ? KnowledgeNamespaces.DEFAULT : namespace);
+        Map<Long, Integer> frequencies = new HashMap<>();
+        int length = CjkBigramTokenizer.tokenize(segment.text(), term -> frequencies.merge(term, 1, Integer::sum));
+        if (doc >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        lengths[doc] = length;
+        totalLength += length;
+        for (Map.Entry<Long, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(doc, entry.getValue());
+        }
+        docById.put(id, doc);
+    }
+
+    private void markDeleted(int doc) {
+        deleted.set(doc);
+        totalLength -= lengths[doc];
+    }
+
+    /**
+     * 已删除的片段超过一半时只保留有效片段重建索引
+     */
+    private void compactIfNeeded() {
+        int deletedCount = deleted.cardinality();
+        if (deletedCount < 64 || deletedCount < docById.size()) {
+            return;
+        }
+        List<String> liveIds = new ArrayList<>(docById.size());
+        List<TextSegment> liveSegments = new ArrayList<>(docById.size());
+        for (int doc = 0; doc < ids.size(); doc++) {
+            if (!deleted.get(doc)) {
+                liveIds.add(ids.get(doc));
+                liveSegments.add(segments.get(doc));
+            }
+        }
+        ids.clear();
+        segments.clear();
+        namespaces.clear();
+        deleted.clear();
+        docById.clear();
+        postings.clear();
+        totalLength = 0;
+        for (int i = 0; i < liveIds.size(); i++) {
+            index(liveIds.get(i), liveSegments.get(i));
+        }
+    }
+
+    private static Map<Long, Integer> termFrequencies(String text) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        CjkBigramTokenizer.tokenize(text, term -> frequencies.merge(term, 1, Integer::sum));
+        return frequencies;
+    }
+
+    private static final class Postings {
+
+        private int[] data = new int[8];
+
+        private int size;
+
+        void add(int doc, int frequency) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = doc;
+            data[size++] = frequency;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.search.RelevanceScorer;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 本地重排序
+ * 在融合排名得分的基础上，用查询词（二元词）在片段标题和正文中的覆盖度重新打分，
+ * 不调用外部重排序模型，单次重排序只需要对十几个候选分词
+ */
+public class LocalReranker {
+
+    private final RelevanceScorer relevanceScorer;
+
+    private final double fusionWeight;
+
+    private final double lexicalWeight;
+
+    /**
+     * 待重排序的候选
+     *
+     * @param id          片段ID
+     * @param segment     片段
+     * @param fusionScore 归一化到[0, 1]的融合排名得分
+     */
+    public record Candidate(String id, TextSegment segment, double fusionScore) {
+    }
+
+    /**
+     * 重排序结果
+     */
+    public record Ranked(String id, TextSegment segment, double score) {
+    }
+
+    public LocalReranker(RelevanceScorer relevanceScorer, double fusionWeight, double lexicalWeight) {
+        this.relevanceScorer = relevanceScorer;
+        this.fusionWeight = fusionWeight;
+        this.lexicalWeight = lexicalWeight;
+    }
+
+    /**
+     * 重排序
+     *
+     * @return 按得分从高到低排列的结果
+     */
+    public List<Ranked> rerank(String query, List<Candidate> candidates) {
+        RelevanceScorer.PreparedQuery prepared = relevanceScorer.prepare(query);
+        double totalWeight = fusionWeight + lexicalWeight;
+        List<Ranked> ranked = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            double lexical = relevanceScorer.score(prepared, title(candidate.segment()), candidate.segment().text());
+            double score = (fusionWeight * candidate.fusionScore() + lexicalWeight * lexical) / totalWeight;
+            ranked.add(new Ranked(candidate.id(), candidate.segment(), score));
+        }
+        ranked.sort(Comparator.comparingDouble(Ranked::score).reversed());
+        return ranked;
+    }
+
+    /**
+     * 以文件名（去掉扩展名）作为片段标题，例如“神经内科”
+     */
+    private static String title(TextSegment segment) {
+        String fileName = segment.metadata().getString("file_name");
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+}
@@ -0,0 +1,309 @@
+package com.atguigu.java.ai.langchain4j.rag;
+
+import com.atguigu.java.ai.langchain4j.config.AnswerCacheConfig;
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.input.PromptTemplate;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 语义答案缓存
+ * 医院地址、门诊时间、挂号流程这类问题大多是近似重复的，答案不依赖聊天记录也不需要调用工具
+ * 收到问题时先计算问题向量，在本地HNSW索引中查找相似度超过阈值的历史问题，命中后直接回放缓存的答案，不再调用大模型
+ * 只缓存“无状态”的答案：会话中的第一个问题，且生成过程中没有调用工具；与日期相关的问题不查询也不写入缓存
+ * 答案按数量和有效期淘汰，日期变化或知识库内容变化后全部失效
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    private static final String SYSTEM_PROMPT_RESOURCE = "zhaozhi-prompt-template.txt";
+
+    @Autowired
+    private AnswerCacheConfig answerCacheConfig;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    @Qualifier("chatMemoryProviderXiaozhi")
+    private ChatMemoryProvider chatMemoryProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, CachedAnswer> answers;
+
+    /**
+     * 问题向量索引，条目随answers的淘汰一起删除
+     * 替换索引和写入新条目都在this上同步，写入不会落到刚被替换掉的旧索引中
+     */
+    private volatile HnswEmbeddingStore index;
+
+    /**
+     * 自上次重建以来写入索引的次数，索引只做逻辑删除，写入次数过多时用有效条目重建
+     */
+    private final AtomicInteger indexWrites = new AtomicInteger();
+
+    private String systemPromptTemplate;
+
+    private Pattern dateSensitivePattern;
+
+    /**
+     * 答案过期使用的时钟，测试中替换
+     */
+    private Ticker ticker = Ticker.systemTicker();
+
+    /**
+     * 判断答案是否为当天生成使用的时钟，测试中替换
+     */
+    private Clock clock = Clock.systemDefaultZone();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private record CachedAnswer(String question, String answer, float[] vector, LocalDate date) {
+    }
+
+    @PostConstruct
+    public void initCache() {
+        answers = Caffeine.newBuilder()
+                .maximumSize(answerCacheConfig.getMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(answerCacheConfig.getTtlSeconds()))
+                .ticker(ticker)
+                .removalListener((String id, CachedAnswer answer, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED) {
+                        index.removeAll(List.of(id));
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, answers, "semantic-answers");
+        hits = Counter.builder("xiaozhi.answer.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("xiaozhi.answer.cache.requests").tag("result", "miss").register(meterRegistry);
+        index = newIndex();
+        dateSensitivePattern = Pattern.compile(answerCacheConfig.getDateSensitivePattern());
+        try {
+            systemPromptTemplate = new ClassPathResource(SYSTEM_PROMPT_RESOURCE).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取系统提示词失败", e);
+        }
+    }
+
+    /**
+     * 先查缓存，未命中时调用generator生成答案，满足条件时写入缓存
+     *
+     * @param memoryId  会话ID
+     * @param question  用户问题
+     * @param generator 调用智能体生成答案
+     * @return 流式答案
+     */
+    public Flux<String> chat(Long memoryId, String question, Supplier<Flux<String>> generator) {
+        if (!answerCacheConfig.isEnabled() || question == null || question.isBlank()
+                || question.length() > answerCacheConfig.getMaxQuestionChars()
+                || dateSensitivePattern.matcher(question).find()) {
+            return generator.get();
+        }
+        return Mono.fromCallable(() -> lookup(memoryId, question))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(lookup -> {
+                    if (lookup.answer() != null) {
+                        hits.increment();
+                        return replay(memoryId, question, lookup.answer());
+                    }
+                    misses.increment();
+                    return generateAndCache(memoryId, lookup, generator);
+                });
+    }
+
+    /**
+     * 知识库内容变化后，之前的答案可能已经过时
+     */
+    @EventListener
+    public void onKnowledgeBaseChanged(KnowledgeBaseChangedEvent event) {
+        invalidateAll();
+        logger.info("知识库内容已变化（新增片段 {}，删除片段 {}），语义答案缓存已清空",
+                event.getAddedSegments(), event.getRemovedSegments());
+    }
+
+    public void invalidateAll() {
+        answers.invalidateAll();
+        rebuildIndex();
+    }
+
+    private Lookup lookup(Long memoryId, String question) {
+        boolean firstTurn = chatMemoryProvider.get(memoryId).messages().stream()
+                .allMatch(message -> message instanceof SystemMessage);
+        Embedding embedding;
+        try {
+            embedding = embeddingModel.embed(question).content();
+        } catch (Exception e) {
+            logger.warn("计算问题向量失败，跳过语义答案缓存: {}", e.getMessage());
+            return new Lookup(question, null, false, null);
+        }
+        List<EmbeddingMatch<TextSegment>> matches = index.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(1)
+                .minScore(answerCacheConfig.getSimilarityThreshold())
+                .build()).matches();
+        if (!matches.isEmpty()) {
+            CachedAnswer cached = answers.getIfPresent(matches.get(0).embeddingId());
+            if (cached != null && cached.date().equals(LocalDate.now(clock))) {
+                logger.debug("语义答案缓存命中：“{}” -> “{}”，相似度 {}", question, cached.question(), matches.get(0).score());
+                return new Lookup(question, embedding, firstTurn, cached.answer());
+            }
+        }
+        return new Lookup(question, embedding, firstTurn, null);
+    }
+
+    /**
+     * 回放缓存的答案，同时把这一轮问答写入聊天记忆，后续追问仍然有上下文
+     */
+    private Flux<String> replay(Long memoryId, String question, String answer) {
+        Mono<Void> record = Mono.<Void>fromRunnable(() -> {
+                    ChatMemory chatMemory = chatMemoryProvider.get(memoryId);
+                    if (chatMemory.messages().stream().noneMatch(message -> message instanceof SystemMessage)) {
+                        // 系统消息必须在最前面，与智能体渲染的系统消息相同，之后智能体写入时不会重复
+                        chatMemory.add(PromptTemplate.from(systemPromptTemplate).apply(Map.of()).toSystemMessage());
+                    }
+                    chatMemory.add(UserMessage.from(question));
+                    chatMemory.add(AiMessage.from(answer));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.warn("写入缓存答案到聊天记忆失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
+        return Flux.fromIterable(chunks(answer)).concatWith(record.then(Mono.empty()));
+    }
+
+    private Flux<String> generateAndCache(Long memoryId, Lookup lookup, Supplier<Flux<String>> generator) {
+        if (!lookup.firstTurn() || lookup.embedding() == null) {
+            return generator.get();
+        }
+        StringBuilder answer = new StringBuilder();
+        return generator.get()
+                .doOnNext(answer::append)
+                .concatWith(Mono.<String>fromRunnable(() -> {
+                    if (answer.length() > 0 && !usedTools(memoryId)) {
+                        put(lookup.question(), answer.toString(), lookup.embedding());
+                    }
+                }).subscribeOn(Schedulers.boundedElastic()).onErrorResume(e -> {
+                    logger.warn("写入语义答案缓存失败: {}", e.getMessage());
+                    return Mono.empty();
+                }));
+    }
+
+    /**
+     * 检查最后一个用户问题之后是否调用过工具（预约、联网搜索等），这类答案依赖实时数据，不缓存
+     */
+    private boolean usedTools(Long memoryId) {
+        List<ChatMessage> messages = chatMemoryProvider.get(memoryId).messages();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            ChatMessage message = messages.get(i);
+            if (message instanceof UserMessage) {
+                return false;
+            }
+            if (message instanceof AiMessage aiMessage && aiMessage.hasToolExecutionRequests()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void put(String question, String answer, Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        float[] vector = embedding.vector();
+        answers.put(id, new CachedAnswer(question, answer, vector, LocalDate.now(clock)));
+        index.add(id, Embedding.from(vector));
+        if (indexWrites.incrementAndGet() > answerCacheConfig.getMaxSize() * 2) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * 用缓存中仍然有效的答案重建索引，清除逻辑删除的节点
+     */
+    private synchronized void rebuildIndex() {
+        HnswEmbeddingStore rebuilt = newIndex();
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        answers.asMap().forEach((id, cached) -> {
+            ids.add(id);
+            embeddings.add(Embedding.from(cached.vector()));
+        });
+        if (!ids.isEmpty()) {
+            rebuilt.addAll(ids, embeddings, null);
+        }
+        index = rebuilt;
+        indexWrites.set(ids.size());
+    }
+
+    private static HnswEmbeddingStore newIndex() {
+        return new HnswEmbeddingStore(null, DistanceMetric.COSINE, 16, 100, 64);
+    }
+
+    private List<String> chunks(String answer) {
+        int size = Math.max(1, answerCacheConfig.getReplayChunkChars());
+        List<String> chunks = new ArrayList<>((answer.length() + size - 1) / size);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(answer.length(), start + size);
+            // 不把代理对拆开
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private record Lookup(String question, Embedding embedding, boolean firstTurn, String answer) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+/**
+ * 轻量的中日韩二元分词
+ * 连续的汉字（及假名、谚文）按相邻两字切分为二元词，单独出现的一个字作为一元词；
+ * 连续的英文字母和数字作为一个词，忽略大小写；其他字符视为分隔符
+ * 每个词编码为一个long，分词过程不创建字符串，适合对大量搜索结果逐条打分
+ */
+public final class CjkBigramTokenizer {
+
+    /**
+     * 接收分词结果
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        void accept(long term);
+    }
+
+    private static final long BIGRAM_FLAG = 1L << 62;
+
+    private static final long UNIGRAM_FLAG = 1L << 61;
+
+    private static final long WORD_FLAG = 1L << 63;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private CjkBigramTokenizer() {
+    }
+
+    /**
+     * 分词
+     *
+     * @param text     文本
+     * @param consumer 按出现顺序接收每个词
+     * @return 词的数量
+     */
+    public static int tokenize(CharSequence text, TermConsumer consumer) {
+        if (text == null) {
+            return 0;
+        }
+        int count = 0;
+        int length = text.length();
+        char previousCjk = 0;
+        boolean cjkRunSingle = false;
+        long wordHash = FNV_OFFSET;
+        boolean inWord = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? normalize(text.charAt(i)) : 0;
+            boolean cjk = i < length && isCjk(c);
+            boolean wordChar = i < length && isWordChar(c);
+
+            if (!wordChar && inWord) {
+                consumer.accept(wordHash | WORD_FLAG);
+                count++;
+                inWord = false;
+                wordHash = FNV_OFFSET;
+            }
+            if (cjk) {
+                if (previousCjk != 0) {
+                    consumer.accept(BIGRAM_FLAG | ((long) previousCjk << 16) | c);
+                    count++;
+                    cjkRunSingle = false;
+                } else {
+                    cjkRunSingle = true;
+                }
+                previousCjk = c;
+            } else {
+                if (previousCjk != 0 && cjkRunSingle) {
+                    // 前后都不是汉字的单个字，作为一元词
+                    consumer.accept(UNIGRAM_FLAG | previousCjk);
+                    count++;
+                }
+                previousCjk = 0;
+                cjkRunSingle = false;
+            }
+            if (wordChar) {
+                wordHash = (wordHash ^ c) * FNV_PRIME;
+                inWord = true;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 全角字母数字转半角并转小写
+     */
+    private static char normalize(char c) {
+        if (c >= '\uFF01' && c <= '\uFF5E') {
+            c = (char) (c - 0xFEE0);
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= '\u4E00' && c <= '\u9FFF')
+                || (c >= '\u3400' && c <= '\u4DBF')
+                || (c >= '\uF900' && c <= '\uFAFF')
+                || (c >= '\u3040' && c <= '\u30FF')
+                || (c >= '\uAC00' && c <= '\uD7AF');
+    }
+}
@@ -0,0 +1,123 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 搜索结果相关性打分
+ * 使用二元分词和BM25F公式，对标题和摘要两个字段分别计算词频并按字段加权（标题权重更高），
+ * 得分按查询可能达到的最高分归一化到[0, 1)，不同搜索请求的结果之间可以直接比较
+ * 单页搜索结果太少，无法统计可靠的逆文档频率，这里所有查询词权重相同（二元词优先于单字）
+ */
+@Component
+public class RelevanceScorer {
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private static final double TITLE_BOOST = 2.0;
+
+    private static final double SNIPPET_BOOST = 1.0;
+
+    /**
+     * 标题、摘要的平均词数，用于长度归一化
+     */
+    private static final double AVG_TITLE_LENGTH = 15;
+
+    private static final double AVG_SNIPPET_LENGTH = 80;
+
+    /**
+     * 单字查询词的权重，低于二元词
+     */
+    private static final double UNIGRAM_WEIGHT = 0.5;
+
+    /**
+     * 预处理后的查询：排序去重后的查询词及其权重，同一查询对多条结果打分时只需计算一次
+     */
+    public static final class PreparedQuery {
+
+        private final long[] terms;
+
+        private final double[] weights;
+
+        private final double maxScore;
+
+        private PreparedQuery(long[] terms, double[] weights) {
+            this.terms = terms;
+            this.weights = weights;
+            double total = 0;
+            for (double weight : weights) {
+                total += weight * (K1 + 1);
+            }
+            this.maxScore = total;
+        }
+
+        public boolean isEmpty() {
+            return terms.length == 0;
+        }
+    }
+
+    /**
+     * 预处理查询语句
+     */
+    public PreparedQuery prepare(String query) {
+        long[] collected = new long[Math.max(4, query == null ? 0 : query.length() * 2)];
+        int[] size = {0};
+        CjkBigramTokenizer.tokenize(query, term -> {
+            if (size[0] < collected.length) {
+                collected[size[0]++] = term;
+            }
+        });
+        long[] terms = Arrays.stream(Arrays.copyOf(collected, size[0])).sorted().distinct().toArray();
+        double[] weights = new double[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            weights[i] = isUnigram(terms[i]) ? UNIGRAM_WEIGHT : 1.0;
+        }
+        return new PreparedQuery(terms, weights);
+    }
+
+    /**
+     * 计算一条搜索结果的相关性得分
+     *
+     * @param query   预处理后的查询
+     * @param title   标题
+     * @param snippet 摘要
+     * @return [0, 1)之间的得分
+     */
+    public double score(PreparedQuery query, String title, String snippet) {
+        if (query.isEmpty()) {
+            return 0.0;
+        }
+        int[] titleFrequencies = new int[query.terms.length];
+        int[] snippetFrequencies = new int[query.terms.length];
+        int titleLength = countTerms(query, title, titleFrequencies);
+        int snippetLength = countTerms(query, snippet, snippetFrequencies);
+
+        double titleNorm = 1 - B + B * titleLength / AVG_TITLE_LENGTH;
+        double snippetNorm = 1 - B + B * snippetLength / AVG_SNIPPET_LENGTH;
+        double score = 0;
+        for (int i = 0; i < query.terms.length; i++) {
+            double frequency = TITLE_BOOST * titleFrequencies[i] / titleNorm
+                    + SNIPPET_BOOST * snippetFrequencies[i] / snippetNorm;
+            if (frequency > 0) {
+                score += query.weights[i] * frequency * (K1 + 1) / (frequency + K1);
+            }
+        }
+        return score / query.maxScore;
+    }
+
+    private static int countTerms(PreparedQuery query, String text, int[] frequencies) {
+        return CjkBigramTokenizer.tokenize(text, term -> {
+            int index = Arrays.binarySearch(query.terms, term);
+            if (index >= 0) {
+                frequencies[index]++;
+            }
+        });
+    }
+
+    private static boolean isUnigram(long term) {
+        return term > 0 && (term & (1L << 61)) != 0 && (term & (1L << 62)) == 0;
+    }
+}
@@ -0,0 +1,242 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+import com.atguigu.java.ai.langchain4j.config.SearchConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * 搜索API客户端
+ * 基于Reactor Netty连接池的非阻塞调用，连接、读取和整体调用都有超时，
+ * 同时在途的请求数受连接池大小和排队上限约束
+ * 调用经过熔断器：搜索服务持续失败时直接拒绝，不再等待超时；
+ * 可选对冲请求：首字节等待时间超过近期p95延迟时再发出一个相同请求，取先返回的一个
+ */
+@Component
+public class SearchApiClient {
+
+    private final String apiKey;
+
+    private final int resultCount;
+
+    private final SearchConfig searchConfig;
+
+    private final ConnectionProvider connectionProvider;
+
+    private final WebClient webClient;
+
+    private final SearchCircuitBreaker circuitBreaker;
+
+    /**
+     * 成功调用的首字节延迟，用于计算对冲延迟，同时以直方图形式导出
+     */
+    private final Timer latencyTimer;
+
+    private final Counter failureCounter;
+
+    private final Counter rejectedCounter;
+
+    private final Counter hedgedCounter;
+
+    @Autowired
+    public SearchApiClient(@Value("${bing.search.api.url}") String apiUrl,
+                           @Value("${bing.search.api.key}") String apiKey,
+                           @Value("${bing.search.api.count}") int resultCount,
+                           SearchConfig searchConfig,
+                           MeterRegistry meterRegistry) {
+        this(apiUrl, apiKey, resultCount, searchConfig, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock 熔断器使用的时钟，测试中可替换为手动推进的时钟
+     */
+    public SearchApiClient(String apiUrl, String apiKey, int resultCount, SearchConfig searchConfig,
+                           MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.apiKey = apiKey;
+        this.resultCount = resultCount;
+        this.searchConfig = searchConfig;
+
+        connectionProvider = ConnectionProvider.builder("search-api")
+                .maxConnections(searchConfig.getMaxConnections())
+                .pendingAcquireMaxCount(searchConfig.getMaxPendingAcquires())
+                .pendingAcquireTimeout(Duration.ofMillis(searchConfig.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofSeconds(searchConfig.getMaxIdleSeconds()))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, searchConfig.getConnectTimeoutMs())
+                .responseTimeout(Duration.ofMillis(searchConfig.getReadTimeoutMs()))
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(searchConfig.getReadTimeoutMs(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(searchConfig.getReadTimeoutMs(), TimeUnit.MILLISECONDS)));
+        webClient = WebClient.builder()
+                .baseUrl(apiUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(HttpHeaders.USER_AGENT, "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
+                .build();
+
+        circuitBreaker = new SearchCircuitBreaker(
+                searchConfig.getCircuitWindowSize(),
+                searchConfig.getCircuitMinimumCalls(),
+                searchConfig.getCircuitFailureRateThreshold(),
+                searchConfig.getCircuitOpenMs(),
+                searchConfig.getCircuitHalfOpenPermits(),
+                nanoClock);
+        latencyTimer = Timer.builder("xiaozhi.search.latency")
+                .description("搜索API首字节延迟")
+                .publishPercentiles(0.95)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        failureCounter = Counter.builder("xiaozhi.search.failures").register(meterRegistry);
+        rejectedCounter = Counter.builder("xiaozhi.search.circuit.rejected").register(meterRegistry);
+        hedgedCounter = Counter.builder("xiaozhi.search.hedged").register(meterRegistry);
+        // 0 关闭，1 打开，2 半开
+        Gauge.builder("xiaozhi.search.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void disposeConnectionProvider() {
+        connectionProvider.dispose();
+    }
+
+    /**
+     * 执行一次搜索，以DataBuffer流的形式返回响应体，供流式解析
+     * 调用方负责释放收到的DataBuffer
+     *
+     * @param searchQuery 搜索关键词
+     * @return 响应体；超时、连接池排队已满或熔断打开时以错误结束
+     */
+    public Flux<DataBuffer> search(String searchQuery) {
+        return Flux.defer(() -> {
+            // 主请求和对冲请求共用同一个截止时间，整个调用（含读取完整个响应体）不超过调用超时
+            long deadline = System.nanoTime() + callTimeout().toNanos();
+            Flux<DataBuffer> primary = guardedRequest(searchQuery, deadline);
+            Duration hedgeDelay = hedgeDelay();
+            if (hedgeDelay == null) {
+                return primary;
+            }
+            // 对冲请求延迟发出；主请求在此之前返回数据时，对冲请求被取消，不会真正发出，也不计入对冲次数
+            Flux<DataBuffer> hedge = guardedRequest(searchQuery, deadline)
+                    .doOnSubscribe(subscription -> hedgedCounter.increment())
+                    .delaySubscription(hedgeDelay);
+            return Flux.firstWithValue(primary, hedge);
+        });
+    }
+
+    /**
+     * 经过熔断器的一次请求，按首字节是否在截止时间前到达记录成功或失败
+     */
+    private Flux<DataBuffer> guardedRequest(String searchQuery, long deadline) {
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                rejectedCounter.increment();
+                return Flux.error(new SearchCircuitOpenException());
+            }
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return request(searchQuery)
+                    // 每个分片的超时都指向同一个截止时间，超过截止时间时整个调用以TimeoutException结束
+                    .timeout(untilDeadline(deadline), buffer -> untilDeadline(deadline))
+                    .doOnNext(buffer -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            latencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            failureCounter.increment();
+                            circuitBreaker.onFailure();
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            circuitBreaker.onIgnored();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 到截止时间时发出信号
+     */
+    private static Mono<Long> untilDeadline(long deadline) {
+        return Mono.defer(() -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))));
+    }
+
+    private Flux<DataBuffer> request(String searchQuery) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .queryParam("q", searchQuery)
+                        .queryParam("count", resultCount)
+                        .queryParam("mkt", "zh-CN")
+                        .queryParam("safesearch", "Moderate")
+                        .build())
+                .header("Ocp-Apim-Subscription-Key", apiKey)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+    }
+
+    /**
+     * 对冲延迟：近期成功调用的p95首字节延迟，不低于配置的最小值；样本不足或未启用时返回null
+     */
+    private Duration hedgeDelay() {
+        if (!searchConfig.isHedgeEnabled() || latencyTimer.count() < searchConfig.getHedgeMinSamples()) {
+            return null;
+        }
+        double p95Millis = 0;
+        for (ValueAtPercentile percentile : latencyTimer.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == 0.95) {
+                p95Millis = percentile.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Duration.ofMillis(Math.max((long) p95Millis, searchConfig.getHedgeMinDelayMs()));
+    }
+
+    /**
+     * 每次搜索请求的结果数量
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public SearchCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 单次搜索调用的总超时时间
+     */
+    public Duration callTimeout() {
+        return Duration.ofMillis(searchConfig.getCallTimeoutMs());
+    }
+}
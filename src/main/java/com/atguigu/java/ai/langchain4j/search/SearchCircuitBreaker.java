@@ -0,0 +1,157 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 搜索API的熔断器
+ * 关闭状态下统计最近若干次调用的失败率，超过阈值后打开，打开期间直接拒绝调用；
+ * 打开一段时间后进入半开状态，放行少量探测请求，全部成功则关闭，任一失败则重新打开
+ */
+public class SearchCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int windowSize;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final long openDurationNanos;
+
+    private final int halfOpenPermits;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * 最近windowSize次调用的结果（环形缓冲），true为失败
+     */
+    private final boolean[] outcomes;
+
+    private int recorded;
+
+    private int next;
+
+    private int failures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int halfOpenIssued;
+
+    private int halfOpenSucceeded;
+
+    /**
+     * @param windowSize           统计失败率的调用次数窗口
+     * @param minimumCalls         窗口内至少有多少次调用才计算失败率
+     * @param failureRateThreshold 打开熔断的失败率（百分比）
+     * @param openDurationMillis   打开状态持续的时间，之后进入半开状态
+     * @param halfOpenPermits      半开状态放行的探测请求数
+     * @param nanoClock            时钟，测试时可替换
+     */
+    public SearchCircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold,
+                                long openDurationMillis, int halfOpenPermits, LongSupplier nanoClock) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationMillis * 1_000_000L;
+        this.halfOpenPermits = Math.max(1, halfOpenPermits);
+        this.nanoClock = nanoClock;
+        this.outcomes = new boolean[this.windowSize];
+    }
+
+    /**
+     * 申请一次调用许可
+     *
+     * @return 是否允许调用；返回true后必须调用onSuccess、onFailure或onIgnored之一
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenIssued = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenIssued >= halfOpenPermits) {
+                return false;
+            }
+            halfOpenIssued++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenPermits) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    /**
+     * 调用在返回结果前被取消（例如对冲请求中落败的一方），不计入成功或失败，只归还半开状态的探测许可
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenIssued > 0) {
+            halfOpenIssued--;
+        }
+    }
+
+    public synchronized State getState() {
+        // 打开时间已到但还没有新的调用时，对外同样报告为半开
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (state != State.CLOSED) {
+            // 打开状态下放行前发出的请求陆续返回，不计入新的统计窗口
+            return;
+        }
+        if (recorded == windowSize) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
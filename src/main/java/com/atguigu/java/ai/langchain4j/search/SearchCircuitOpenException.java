@@ -0,0 +1,11 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+/**
+ * 搜索API熔断打开时直接拒绝调用
+ */
+public class SearchCircuitOpenException extends RuntimeException {
+
+    public SearchCircuitOpenException() {
+        super("搜索服务暂时不可用，已熔断");
+    }
+}
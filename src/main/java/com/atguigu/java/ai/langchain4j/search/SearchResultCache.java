@@ -0,0 +1,126 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+import com.atguigu.java.ai.langchain4j.bean.SearchCacheEntry;
+import com.atguigu.java.ai.langchain4j.config.SearchConfig;
+import com.atguigu.java.ai.langchain4j.entity.SearchEvidence;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * 搜索结果缓存
+ * 一级缓存为本地Caffeine异步缓存，按数量和TTL淘汰；二级缓存（可选）保存在MongoDB中，多个实例共享
+ * 同一个键并发的请求共用同一个加载结果，只会向搜索API发出一次请求
+ */
+@Component
+public class SearchResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+
+    @Autowired
+    private SearchConfig searchConfig;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AsyncCache<String, List<SearchEvidence>> cache;
+
+    @PostConstruct
+    public void initCache() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(searchConfig.getCacheMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(searchConfig.getCacheTtlSeconds()))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "search-results");
+    }
+
+    /**
+     * 读取缓存，未命中时调用loader加载
+     *
+     * @param searchQuery 补充了后缀关键词的搜索语句
+     * @param sourceType  来源类型
+     * @param loader      未命中时执行的搜索
+     * @return 搜索结果
+     */
+    public Mono<List<SearchEvidence>> get(String searchQuery, String sourceType, Supplier<Mono<List<SearchEvidence>>> loader) {
+        if (!searchConfig.isCacheEnabled()) {
+            return loader.get();
+        }
+        String key = cacheKey(searchQuery, sourceType);
+        // 加载中的future会被并发的相同请求共享；加载失败时Caffeine自动移除该键
+        // 单个调用方取消时不取消共享的future，其他等待者不受影响
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> load(k, loader).toFuture()), true)
+                .doOnNext(evidences -> {
+                    if (evidences.isEmpty()) {
+                        // 空结果通常是上游异常导致，不缓存，下次重新搜索
+                        cache.synchronous().invalidate(key);
+                    }
+                });
+    }
+
+    private Mono<List<SearchEvidence>> load(String key, Supplier<Mono<List<SearchEvidence>>> loader) {
+        if (!searchConfig.isMongoCacheEnabled()) {
+            return loader.get();
+        }
+        return Mono.fromCallable(() -> mongoTemplate.findById(key, SearchCacheEntry.class))
+                .subscribeOn(Schedulers.boundedElastic())
+                .filter(entry -> entry.getExpiresAt() != null && entry.getExpiresAt().after(new Date()))
+                .map(SearchCacheEntry::getEvidences)
+                .onErrorResume(e -> {
+                    logger.warn("读取搜索结果二级缓存失败: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> loader.get().flatMap(evidences -> saveToMongo(key, evidences))));
+    }
+
+    private Mono<List<SearchEvidence>> saveToMongo(String key, List<SearchEvidence> evidences) {
+        if (evidences.isEmpty()) {
+            return Mono.just(evidences);
+        }
+        Date expiresAt = new Date(System.currentTimeMillis() + searchConfig.getMongoCacheTtlSeconds() * 1000L);
+        return Mono.fromCallable(() -> mongoTemplate.save(new SearchCacheEntry(key, evidences, expiresAt)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(saved -> evidences)
+                .onErrorResume(e -> {
+                    logger.warn("写入搜索结果二级缓存失败: {}", e.getMessage());
+                    return Mono.just(evidences);
+                });
+    }
+
+    static String cacheKey(String searchQuery, String sourceType) {
+        return sourceType + "|" + normalize(searchQuery);
+    }
+
+    /**
+     * 规范化搜索语句：全角转半角、转小写、标点替换为空格并合并连续空白
+     * “头痛 发热？”与“头痛  发热”得到相同的键
+     */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        normalized = normalized.replaceAll("[\\p{Punct}\\p{IsPunctuation}]+", " ");
+        return normalized.trim().replaceAll("\\s+", " ");
+    }
+}
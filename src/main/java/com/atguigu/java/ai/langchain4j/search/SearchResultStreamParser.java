@@ -0,0 +1,199 @@
+package com.atguigu.java.ai.langchain4j.search;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式解析搜索API响应
+ * 直接从响应的DataBuffer增量解析webPages.value数组，不拼接完整的响应字符串、不构建JsonNode树，
+ * 读到所需数量的结果后立即停止并取消剩余响应的读取
+ *
+ * @param <T> 每条结果转换后的类型
+ */
+public class SearchResultStreamParser<T> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 将一条搜索结果的标题、摘要和链接转换为结果对象
+     */
+    @FunctionalInterface
+    public interface ResultMapper<T> {
+        T map(String title, String snippet, String url);
+    }
+
+    private final int limit;
+
+    private final ResultMapper<T> mapper;
+
+    private final JsonParser parser;
+
+    private final ByteBufferFeeder feeder;
+
+    private final List<T> results = new ArrayList<>();
+
+    private int depth;
+
+    private String fieldName;
+
+    private boolean inWebPages;
+
+    private boolean inValueArray;
+
+    private boolean inItem;
+
+    private boolean done;
+
+    private String title;
+
+    private String snippet;
+
+    private String url;
+
+    public SearchResultStreamParser(int limit, ResultMapper<T> mapper) throws IOException {
+        this.limit = limit;
+        this.mapper = mapper;
+        this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * 解析响应体，每次订阅使用新的解析器
+     *
+     * @param body   响应体的DataBuffer流
+     * @param limit  最多解析的结果数量
+     * @param mapper 结果转换
+     * @return 解析出的结果列表
+     */
+    public static <T> Mono<List<T>> parse(Flux<DataBuffer> body, int limit, ResultMapper<T> mapper) {
+        return Mono.defer(() -> {
+            SearchResultStreamParser<T> streamParser;
+            try {
+                streamParser = new SearchResultStreamParser<>(limit, mapper);
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            return body
+                    .<Boolean>handle((buffer, sink) -> {
+                        try {
+                            if (streamParser.feed(buffer)) {
+                                // 已读到足够的结果，结束订阅，剩余的响应数据不再读取
+                                sink.complete();
+                            }
+                        } catch (IOException e) {
+                            sink.error(e);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then(Mono.fromCallable(streamParser::finish));
+        });
+    }
+
+    /**
+     * 输入一段响应数据
+     *
+     * @return 是否已经解析到足够的结果
+     */
+    public boolean feed(DataBuffer buffer) throws IOException {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext() && !done) {
+                feed(iterator.next());
+            }
+        }
+        return done;
+    }
+
+    /**
+     * 输入一段响应数据
+     *
+     * @return 是否已经解析到足够的结果
+     */
+    public boolean feed(ByteBuffer byteBuffer) throws IOException {
+        if (done) {
+            return true;
+        }
+        feeder.feedInput(byteBuffer);
+        JsonToken token;
+        // 解析完当前输入中的全部token后才能输入下一段数据
+        while (!done && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+            handle(token);
+        }
+        return done;
+    }
+
+    /**
+     * 响应读取结束，返回已解析的结果
+     */
+    public List<T> finish() throws IOException {
+        parser.close();
+        return results;
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case FIELD_NAME -> fieldName = parser.currentName();
+            case START_OBJECT -> {
+                depth++;
+                if (depth == 2 && "webPages".equals(fieldName)) {
+                    inWebPages = true;
+                } else if (depth == 4 && inValueArray) {
+                    inItem = true;
+                    title = "";
+                    snippet = "";
+                    url = "";
+                }
+            }
+            case START_ARRAY -> {
+                depth++;
+                if (depth == 3 && inWebPages && "value".equals(fieldName)) {
+                    inValueArray = true;
+                }
+            }
+            case END_OBJECT -> {
+                if (depth == 4 && inItem) {
+                    inItem = false;
+                    results.add(mapper.map(title, snippet, url));
+                    done = results.size() >= limit;
+                } else if (depth == 2 && inWebPages) {
+                    done = true;
+                }
+                depth--;
+            }
+            case END_ARRAY -> {
+                if (depth == 3 && inValueArray) {
+                    done = true;
+                }
+                depth--;
+            }
+            default -> {
+                // 只读取结果对象自身的字段值，嵌套对象中的同名字段忽略
+                if (inItem && depth == 4 && token.isScalarValue()) {
+                    readItemField();
+                }
+            }
+        }
+    }
+
+    private void readItemField() throws IOException {
+        if ("name".equals(fieldName)) {
+            title = parser.getValueAsString("");
+        } else if ("snippet".equals(fieldName)) {
+            snippet = parser.getValueAsString("");
+        } else if ("url".equals(fieldName)) {
+            url = parser.getValueAsString("");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带本地缓存的聊天记忆存储（装饰器）
+ * 按memoryId缓存反序列化后的消息列表，写入时同步更新缓存，删除或被其他组件改写时失效
+ * 缓存项在写入后超过过期时间即重新从存储读取，其他实例对同一对话的写入最多延迟一个过期时间可见
+ * 底层存储保存的内容与传入的列表不同时（合并并发写入、同步压缩、补回增量摘要等），必须在写入过程中发布ChatMemoryChangedEvent，
+ * 否则缓存中保留的是调用方传入的列表而不是实际保存的内容
+ */
+public class CachingChatMemoryStore implements ChatMemoryStore {
+
+    private final String name;
+
+    private final ChatMemoryStore delegate;
+
+    private final Cache<String, List<ChatMessage>> cache;
+
+    public CachingChatMemoryStore(String name, ChatMemoryStore delegate, long maximumSize, Duration expireAfterWrite,
+                                  MeterRegistry meterRegistry) {
+        this.name = name;
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        List<ChatMessage> messages = cache.get(key(memoryId), key -> List.copyOf(delegate.getMessages(memoryId)));
+        // 返回副本，调用方可以自由修改
+        return new LinkedList<>(messages);
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        // 先写缓存再写存储：存储在写入过程中改写消息（如同步压缩）时会发布事件，使这里写入的缓存失效
+        cache.put(key(memoryId), List.copyOf(messages));
+        try {
+            delegate.updateMessages(memoryId, messages);
+        } catch (RuntimeException e) {
+            cache.invalidate(key(memoryId));
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        cache.invalidate(key(memoryId));
+        delegate.deleteMessages(memoryId);
+        cache.invalidate(key(memoryId));
+    }
+
+    @EventListener
+    public void onChatMemoryChanged(ChatMemoryChangedEvent event) {
+        cache.invalidate(key(event.getMemoryId()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+
+    /**
+     * memoryId在对话中为Long，在定时任务中来自文档的int，统一转成字符串作为缓存键
+     */
+    private static String key(Object memoryId) {
+        return String.valueOf(memoryId);
+    }
+}
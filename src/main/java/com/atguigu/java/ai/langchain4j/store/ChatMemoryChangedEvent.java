@@ -0,0 +1,17 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+/**
+ * 聊天记忆在调用方之外被改写（压缩、合并摘要等）时发布的事件，用于让缓存失效
+ */
+public class ChatMemoryChangedEvent {
+
+    private final Object memoryId;
+
+    public ChatMemoryChangedEvent(Object memoryId) {
+        this.memoryId = memoryId;
+    }
+
+    public Object getMemoryId() {
+        return memoryId;
+    }
+}
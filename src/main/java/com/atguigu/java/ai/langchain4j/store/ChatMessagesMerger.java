@@ -0,0 +1,101 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 版本冲突时合并聊天记录
+ * 调用方传入的列表基于较早读取的记录，期间其他请求（或其他实例）可能已经写入了新的消息
+ * 按消息序号而不是消息内容判断调用方读到过哪些消息，重复的短消息不会导致并发写入的消息丢失或重复
+ */
+public final class ChatMessagesMerger {
+
+    private ChatMessagesMerger() {
+    }
+
+    /**
+     * 合并结果
+     *
+     * @param messages 最终要写入的消息
+     * @param seqs     与messages一一对应的序号
+     * @param nextSeq  写入后下一条新消息的序号
+     * @param merged   是否合并了调用方没有读到过的消息（保存的内容与调用方传入的不同）
+     */
+    public record Result(List<ChatMessage> messages, List<Long> seqs, long nextSeq, boolean merged) {
+    }
+
+    /**
+     * 合并当前保存的消息与调用方要写入的消息
+     * 已保存消息中序号大于调用方读到的最大序号、且不在调用方列表中的，是调用方读取之后由其他请求写入的消息；
+     * 没有这样的消息时直接使用调用方的列表（调用方可以通过窗口移出旧消息），
+     * 否则依次写入调用方读到过的消息、其他请求写入的消息、调用方新增的消息
+     *
+     * @param stored     数据库中当前保存的消息
+     * @param storedSeqs 已保存消息的序号
+     * @param nextSeq    下一条新消息的序号
+     * @param incoming   调用方要写入的消息
+     * @param seqOf      调用方消息的序号，新增的消息返回null
+     */
+    public static Result reconcile(List<ChatMessage> stored, List<Long> storedSeqs, long nextSeq,
+                                   List<ChatMessage> incoming, Function<ChatMessage, Long> seqOf) {
+        List<Long> incomingSeqs = new ArrayList<>(incoming.size());
+        Set<Long> known = new HashSet<>();
+        long seen = -1;
+        for (ChatMessage message : incoming) {
+            Long seq = seqOf.apply(message);
+            incomingSeqs.add(seq);
+            if (seq != null) {
+                known.add(seq);
+                seen = Math.max(seen, seq);
+            }
+        }
+
+        List<Integer> concurrent = new ArrayList<>();
+        for (int i = 0; i < stored.size(); i++) {
+            long seq = storedSeqs.get(i);
+            if (stored.get(i).type() != ChatMessageType.SYSTEM && seq > seen && !known.contains(seq)) {
+                concurrent.add(i);
+            }
+        }
+
+        long next = nextSeq;
+        if (concurrent.isEmpty()) {
+            List<Long> seqs = new ArrayList<>(incoming.size());
+            for (Long seq : incomingSeqs) {
+                seqs.add(seq != null ? seq : next++);
+            }
+            return new Result(incoming, seqs, next, false);
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(incoming.size() + concurrent.size());
+        List<Long> seqs = new ArrayList<>(incoming.size() + concurrent.size());
+        List<ChatMessage> added = new ArrayList<>();
+        for (int i = 0; i < incoming.size(); i++) {
+            ChatMessage message = incoming.get(i);
+            if (incomingSeqs.get(i) != null) {
+                messages.add(message);
+                seqs.add(incomingSeqs.get(i));
+            } else if (message.type() == ChatMessageType.SYSTEM) {
+                messages.add(message);
+                seqs.add(next++);
+            } else {
+                added.add(message);
+            }
+        }
+        for (int index : concurrent) {
+            messages.add(stored.get(index));
+            seqs.add(storedSeqs.get(index));
+        }
+        for (ChatMessage message : added) {
+            messages.add(message);
+            seqs.add(next++);
+        }
+        return new Result(messages, seqs, next, true);
+    }
+}
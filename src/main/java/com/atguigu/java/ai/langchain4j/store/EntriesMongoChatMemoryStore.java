@@ -0,0 +1,225 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import com.atguigu.java.ai.langchain4j.bean.ChatMessageEntries;
+import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.atguigu.java.ai.langchain4j.store.codec.ChatMessagesCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 按消息子文档保存的聊天记忆存储
+ * 每条消息是chat_message_entries文档中entries数组的一个元素，新消息通过$push追加，
+ * 并用$slice限制数组长度，避免每轮对话都重写整段聊天记录
+ */
+@Component
+public class EntriesMongoChatMemoryStore implements ChatMemoryStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MemoryConfig memoryConfig;
+
+    @Autowired
+    private ChatMessagesCodec chatMessagesCodec;
+
+    @Autowired
+    private MemoryWriteLocks memoryWriteLocks;
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        ChatMessageEntries chatMessageEntries = findRecentEntries(memoryId);
+        if (chatMessageEntries == null) {
+            // 新结构中没有记录时，从旧的content字段迁移
+            return migrateLegacyContent(memoryId);
+        }
+        List<ChatMessage> messages = new LinkedList<>();
+        if (chatMessageEntries.getSystemMessage() != null) {
+            messages.add(decode(chatMessageEntries.getSystemMessage()));
+        }
+        messages.addAll(decodeAll(chatMessageEntries.getEntries()));
+        return messages;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        // 读取已保存的尾部与追加写入之间不能插入同一memoryId的其他写入，否则重叠计算会失效
+        memoryWriteLocks.run(memoryId, () -> appendMessages(memoryId, messages));
+    }
+
+    private void appendMessages(Object memoryId, List<ChatMessage> messages) {
+        ChatMessage systemMessage = null;
+        List<ChatMessage> windowMessages = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            if (message.type() == ChatMessageType.SYSTEM) {
+                systemMessage = message;
+            } else {
+                windowMessages.add(message);
+            }
+        }
+
+        // 找出已保存的尾部与当前窗口头部的重叠部分，只追加之后的新消息
+        ChatMessageEntries stored = findRecentEntries(memoryId);
+        List<ChatMessage> storedMessages = stored == null ? List.of() : decodeAll(stored.getEntries());
+        int overlap = overlap(storedMessages, windowMessages);
+
+        Query query = new Query(Criteria.where("memoryId").is(memoryId));
+        Update update = new Update();
+        if (overlap == 0 && !storedMessages.isEmpty()) {
+            // 没有重叠（例如记录被压缩或改写过），整体替换
+            update.set("entries", encodeAll(windowMessages));
+        } else if (overlap < windowMessages.size()) {
+            Object[] newEntries = encodeAll(windowMessages.subList(overlap, windowMessages.size())).toArray();
+            // $slice保持数组长度与当前窗口一致，被窗口移出的旧消息同时被截掉
+            update.push("entries").slice(-windowMessages.size()).each(newEntries);
+        }
+        if (systemMessage != null) {
+            update.set("systemMessage", encode(systemMessage));
+        }
+        update.set("lastUpdatedAt", new Date());
+        update.inc("version", 1);
+        mongoTemplate.upsert(query, update, ChatMessageEntries.class);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        Query query = new Query(Criteria.where("memoryId").is(memoryId));
+        mongoTemplate.remove(query, ChatMessageEntries.class);
+        // 同时删除旧结构中的记录，避免下次读取时被重新迁移
+        mongoTemplate.remove(query, ChatMessages.class);
+    }
+
+    /**
+     * 将chat_messages中尚未迁移的记录全部迁移到新结构
+     *
+     * @return 迁移的记录数量
+     */
+    public int migrateAllLegacyContent() {
+        int migratedCount = 0;
+        try (Stream<ChatMessages> stream = mongoTemplate.stream(new Query(), ChatMessages.class)) {
+            for (ChatMessages chatMessages : (Iterable<ChatMessages>) stream::iterator) {
+                if (insertIfAbsent(chatMessages.getMemoryId(), parseLegacyContent(chatMessages))) {
+                    migratedCount++;
+                }
+            }
+        }
+        return migratedCount;
+    }
+
+    /**
+     * 读取时迁移单条旧记录：保留旧文档不删除，便于回退
+     */
+    private List<ChatMessage> migrateLegacyContent(Object memoryId) {
+        ChatMessages chatMessages = mongoTemplate.findOne(new Query(Criteria.where("memoryId").is(memoryId)), ChatMessages.class);
+        if (chatMessages == null) {
+            return new LinkedList<>();
+        }
+        List<ChatMessage> messages = parseLegacyContent(chatMessages);
+        insertIfAbsent(memoryId, messages);
+        return new LinkedList<>(messages);
+    }
+
+    private List<ChatMessage> parseLegacyContent(ChatMessages chatMessages) {
+        return chatMessagesCodec.read(chatMessages);
+    }
+
+    /**
+     * 仅在新结构中不存在该memoryId时写入，不覆盖已有数据
+     *
+     * @return 是否新写入
+     */
+    private boolean insertIfAbsent(Object memoryId, List<ChatMessage> messages) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        Map<String, Object> systemMessage = null;
+        for (ChatMessage message : messages) {
+            if (message.type() == ChatMessageType.SYSTEM) {
+                systemMessage = encode(message);
+            } else {
+                entries.add(encode(message));
+            }
+        }
+        Update update = new Update();
+        update.setOnInsert("entries", entries);
+        if (systemMessage != null) {
+            update.setOnInsert("systemMessage", systemMessage);
+        }
+        update.setOnInsert("version", 1L);
+        update.setOnInsert("lastUpdatedAt", new Date());
+        return mongoTemplate.upsert(new Query(Criteria.where("memoryId").is(memoryId)), update, ChatMessageEntries.class)
+                .getUpsertedId() != null;
+    }
+
+    /**
+     * 只读取entries数组的最后maxMessages个元素
+     */
+    private ChatMessageEntries findRecentEntries(Object memoryId) {
+        Query query = new Query(Criteria.where("memoryId").is(memoryId));
+        query.fields().slice("entries", -memoryConfig.getMaxMessages());
+        return mongoTemplate.findOne(query, ChatMessageEntries.class);
+    }
+
+    /**
+     * 计算stored的尾部与window的头部最长的相同部分
+     */
+    private static int overlap(List<ChatMessage> stored, List<ChatMessage> window) {
+        for (int length = Math.min(stored.size(), window.size()); length > 0; length--) {
+            if (stored.subList(stored.size() - length, stored.size()).equals(window.subList(0, length))) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static List<Map<String, Object>> encodeAll(List<ChatMessage> messages) {
+        List<Map<String, Object>> entries = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            entries.add(encode(message));
+        }
+        return entries;
+    }
+
+    private static Map<String, Object> encode(ChatMessage message) {
+        return Document.parse(ChatMessageSerializer.messageToJson(message));
+    }
+
+    private static List<ChatMessage> decodeAll(List<Map<String, Object>> entries) {
+        List<ChatMessage> messages = new ArrayList<>();
+        if (entries == null) {
+            return messages;
+        }
+        for (Map<String, Object> entry : entries) {
+            messages.add(decode(entry));
+        }
+        return messages;
+    }
+
+    private static ChatMessage decode(Map<String, Object> entry) {
+        try {
+            return ChatMessageDeserializer.messageFromJson(OBJECT_MAPPER.writeValueAsString(entry));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("聊天消息子文档解析失败", e);
+        }
+    }
+}
@@ -2,13 +2,23 @@ package com.atguigu.java.ai.langchain4j.store;
 
 import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
 import com.atguigu.java.ai.langchain4j.config.CompressionConfig;
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.atguigu.java.ai.langchain4j.store.codec.ChatMessagesCodec;
+import com.mongodb.client.result.UpdateResult;
 import dev.langchain4j.data.message.*;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.PromptTemplate;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -18,11 +28,24 @@ import org.springframework.stereotype.Component;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import static java.util.stream.Collectors.toList;
 
 @Component
 public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
 
+    private static final Logger logger = LoggerFactory.getLogger(HierarchicalSummarizationMemoryStore.class);
+
+    /**
+     * 摘要消息的前缀
+     */
+    private static final String SUMMARY_PREFIX = "【历史对话摘要】\n";
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
@@ -33,28 +56,168 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
     @Autowired
     private CompressionConfig compressionConfig;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ChatMessagesCodec chatMessagesCodec;
+
+    @Autowired
+    private MemoryConfig memoryConfig;
+
+    @Autowired
+    private MemoryWriteLocks memoryWriteLocks;
+
+    /**
+     * 分块总结使用的线程池，线程数即同时进行的模型调用上限
+     */
+    private ExecutorService summarizationExecutor;
+
+    /**
+     * 读取和写入过的消息实例的序号，用于合并并发写入
+     */
+    private final MessageSequences messageSequences = new MessageSequences();
+
+    /**
+     * 异步压缩队列，仅在启用asyncCompaction时创建
+     */
+    private MemoryCompactionQueue compactionQueue;
+
+    @PostConstruct
+    public void initSummarizationExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        summarizationExecutor = Executors.newFixedThreadPool(Math.max(1, compressionConfig.getMaxInFlight()), runnable -> {
+            Thread thread = new Thread(runnable, "summarization-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (compressionConfig.isAsyncCompaction()) {
+            compactionQueue = new MemoryCompactionQueue(compressionConfig.getCompactionWorkers(), this::compactStoredMessagesById);
+        }
+    }
+
+    @PreDestroy
+    public void shutdownSummarizationExecutor() {
+        summarizationExecutor.shutdownNow();
+        if (compactionQueue != null) {
+            compactionQueue.shutdown();
+        }
+    }
+
     @Override
     public List<ChatMessage> getMessages(Object memoryId) {
         Criteria criteria = Criteria.where("memoryId").is(memoryId);
         Query query = new Query(criteria);
         ChatMessages chatMessages = mongoTemplate.findOne(query, ChatMessages.class);
         if (chatMessages == null) return new LinkedList<>();
-        return ChatMessageDeserializer.messagesFromJson(chatMessages.getContent());
+        List<ChatMessage> messages = new ArrayList<>(chatMessagesCodec.read(chatMessages));
+        messageSequences.register(messages, MessageSequences.storedSeqs(chatMessages, messages.size()));
+        // 增量摘要单独保存，读取时插入到系统消息之后
+        if (chatMessages.getSummary() != null && !chatMessages.getSummary().isEmpty()) {
+            int index = 0;
+            while (index < messages.size() && messages.get(index).type() == ChatMessageType.SYSTEM) {
+                index++;
+            }
+            messages.add(index, AiMessage.from(SUMMARY_PREFIX + chatMessages.getSummary()));
+        }
+        return messages;
     }
 
     @Override
     public void updateMessages(Object memoryId, List<ChatMessage> messages) {
-        // 检查是否需要进行记忆压缩
-        if (compressionConfig.isEnabled() && messages.size() > compressionConfig.getThreshold()) {
-            messages = compressMessagesWithHierarchicalSummarization(messages);
+        // 同一memoryId在进程内串行写入，跨实例的并发写入由版本号比较保证
+        // 锁内和重试中只做读取、合并和写入，调用模型的压缩放在锁外，避免同一分段上的其他memoryId等待模型返回
+        AtomicBoolean needCompression = new AtomicBoolean();
+        memoryWriteLocks.run(memoryId, () -> needCompression.set(updateMessagesWithRetry(memoryId, messages)));
+        if (!needCompression.get()) {
+            return;
+        }
+        if (compactionQueue != null) {
+            compactionQueue.enqueue(memoryId);
+        } else {
+            // 同步模式：在当前线程压缩刚写入的记录，并以读取时的版本号作为条件写回，只调用一次模型；
+            // 期间有新的写入时放弃本次结果，由下一次写入重新触发
+            compactStoredMessagesById(memoryId);
         }
+    }
 
-        Criteria criteria = Criteria.where("memoryId").is(memoryId);
-        Query query = new Query(criteria);
+    /**
+     * @return 写入后的消息数量是否超过压缩阈值
+     */
+    private boolean updateMessagesWithRetry(Object memoryId, List<ChatMessage> messages) {
+        String incomingSummary = null;
+        if (compressionConfig.isIncrementalSummary()) {
+            // 增量模式下摘要单独写回summary字段，不随消息列表写入content
+            incomingSummary = findSummary(messages);
+            messages = removeSummary(messages);
+        }
+
+        int maxAttempts = Math.max(1, memoryConfig.getWriteMaxRetries());
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            ChatMessages stored = mongoTemplate.findOne(new Query(Criteria.where("memoryId").is(memoryId)), ChatMessages.class);
+            List<ChatMessage> storedMessages = stored == null ? List.of() : chatMessagesCodec.read(stored);
+            List<Long> storedSeqs = MessageSequences.storedSeqs(stored, storedMessages.size());
+            // 调用方读取之后有其他写入时，按消息序号合并而不是覆盖
+            ChatMessagesMerger.Result toWrite = ChatMessagesMerger.reconcile(storedMessages, storedSeqs,
+                    MessageSequences.nextSeq(stored, storedSeqs), messages, messageSequences::seqOf);
+            String summary = incomingSummary;
+            boolean summaryRestored = false;
+            if (summary == null && stored != null && stored.getSummary() != null && !stored.getSummary().isEmpty()) {
+                // 摘要消息已被窗口移出时，沿用已保存的摘要；此后读取到的列表会重新带上摘要消息，与调用方传入的不同
+                summary = stored.getSummary();
+                summaryRestored = compressionConfig.isIncrementalSummary();
+            }
+            if (writeMessages(memoryId, stored, toWrite, summary, toWrite.merged() || summaryRestored)) {
+                messageSequences.register(toWrite.messages(), toWrite.seqs());
+                return compressionConfig.isEnabled() && toWrite.messages().size() > compressionConfig.getThreshold();
+            }
+            logger.info("memoryId={} 写入时版本号冲突，第{}次重试", memoryId, attempt);
+        }
+        throw new OptimisticLockingFailureException("memoryId=" + memoryId + " 的聊天记录写入冲突，重试" + maxAttempts + "次后仍失败");
+    }
+
+    /**
+     * 以读取时的版本号作为条件写入
+     *
+     * @param stored 写入前读取的记录，不存在时为null
+     * @param merged 待写入的消息是否经过合并（与调用方传入的不同）
+     * @return 是否写入成功；版本号不一致时返回false
+     */
+    private boolean writeMessages(Object memoryId, ChatMessages stored, ChatMessagesMerger.Result toWrite,
+                                  String summary, boolean merged) {
+        List<ChatMessage> messages = toWrite.messages();
+        Date now = new Date();
         Update update = new Update();
-        update.set("content", ChatMessageSerializer.messagesToJson(messages));
-        // 根据query条件能查询出文档，则修改文档；否则新增文档
-        mongoTemplate.upsert(query, update, ChatMessages.class);
+        // version为null时同样可以匹配到缺少该字段的旧文档
+        Criteria criteria = Criteria.where("memoryId").is(memoryId).and("version").is(stored == null ? null : stored.getVersion());
+        Query query = new Query(criteria);
+        chatMessagesCodec.write(update, messages);
+        if (summary != null) {
+            update.set("summary", summary);
+        }
+        update.set("messageCount", messages.size());
+        update.set("messageSeqs", toWrite.seqs());
+        update.set("nextSeq", toWrite.nextSeq());
+        update.set("lastUpdatedAt", now);
+        update.inc("version", 1);
+        if (stored != null) {
+            if (mongoTemplate.updateFirst(query, update, ChatMessages.class).getMatchedCount() == 0) {
+                return false;
+            }
+        } else {
+            try {
+                // 文档不存在时新增；其他实例抢先插入时唯一索引冲突，按版本冲突处理
+                mongoTemplate.upsert(query, update, ChatMessages.class);
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+
+        if (merged) {
+            // 保存的消息与调用方传入的不同，通知缓存失效
+            eventPublisher.publishEvent(new ChatMemoryChangedEvent(memoryId));
+        }
+        return true;
     }
 
     @Override
@@ -64,6 +227,151 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
         mongoTemplate.remove(query, ChatMessages.class);
     }
 
+    /**
+     * 异步压缩队列的执行逻辑：读取当前记录进行压缩，并以读取时的版本号作为条件写回
+     * 压缩期间若有新的对话轮次写入，版本号不一致，本次压缩结果直接放弃
+     *
+     * @param memoryId 对话id
+     */
+    private void compactStoredMessagesById(Object memoryId) {
+        ChatMessages chatMessages = mongoTemplate.findOne(new Query(Criteria.where("memoryId").is(memoryId)), ChatMessages.class);
+        if (chatMessages != null) {
+            compactStoredMessages(chatMessages);
+        }
+    }
+
+    /**
+     * 压缩已读取的聊天记录，并以读取时的版本号作为条件写回，供同步写入后、异步队列和定时任务调用
+     *
+     * @param chatMessages 已读取的聊天记录
+     * @return 压缩后的消息数量；未超过阈值或写入冲突时返回-1
+     */
+    public int compactStoredMessages(ChatMessages chatMessages) {
+        return compactStoredMessages(chatMessages, () -> true);
+    }
+
+    /**
+     * 压缩已读取的聊天记录，写回之前先检查是否仍允许写入（例如定时任务的分片租约是否仍由当前实例持有）
+     *
+     * @param chatMessages 已读取的聊天记录
+     * @param writeGuard   写回前调用，返回false时放弃本次压缩结果
+     * @return 压缩后的消息数量；未超过阈值、写入冲突或不允许写入时返回-1
+     */
+    public int compactStoredMessages(ChatMessages chatMessages, BooleanSupplier writeGuard) {
+        Object memoryId = chatMessages.getMemoryId();
+        List<ChatMessage> messages = chatMessagesCodec.read(chatMessages);
+        if (messages.size() <= compressionConfig.getThreshold()) {
+            return -1;
+        }
+
+        Update update = new Update();
+        List<ChatMessage> compressedMessages;
+        if (compressionConfig.isIncrementalSummary()) {
+            RollingSummary rollingSummary = foldIntoRollingSummary(chatMessages.getSummary(), messages);
+            compressedMessages = rollingSummary.messages();
+            update.set("summary", rollingSummary.summary());
+        } else {
+            compressedMessages = compressMessagesWithHierarchicalSummarization(messages);
+        }
+
+        // version为null时同样可以匹配到缺少该字段的旧文档
+        Query query = new Query(Criteria.where("memoryId").is(memoryId).and("version").is(chatMessages.getVersion()));
+        chatMessagesCodec.write(update, compressedMessages);
+        List<Long> compressedSeqs = MessageSequences.rewrittenSeqs(messages,
+                MessageSequences.storedSeqs(chatMessages, messages.size()), compressedMessages);
+        update.set("messageSeqs", compressedSeqs);
+        update.set("messageCount", compressedMessages.size());
+        update.set("lastCompressedAt", new Date());
+        update.inc("version", 1);
+        // 总结可能耗时很久，写回前再检查一次
+        if (!writeGuard.getAsBoolean()) {
+            logger.info("memoryId={} 压缩期间已不允许写入，放弃本次压缩结果", memoryId);
+            return -1;
+        }
+        UpdateResult result = mongoTemplate.updateFirst(query, update, ChatMessages.class);
+        if (result.getMatchedCount() == 0) {
+            logger.info("memoryId={} 在压缩期间有新的写入，放弃本次压缩结果", memoryId);
+            return -1;
+        }
+        messageSequences.register(compressedMessages, compressedSeqs);
+        eventPublisher.publishEvent(new ChatMemoryChangedEvent(memoryId));
+        if (compressionConfig.isVerboseLogging()) {
+            logger.debug("memoryId={} 压缩完成，压缩前消息数量：{}，压缩后消息数量：{}",
+                    memoryId, messages.size(), compressedMessages.size());
+        }
+        return compressedMessages.size();
+    }
+
+    /**
+     * 增量压缩的结果：保留的消息和合并后的摘要
+     */
+    private record RollingSummary(List<ChatMessage> messages, String summary) {
+    }
+
+    /**
+     * 增量摘要：只将本次被移出窗口的消息合并进已有摘要，已总结过的内容不再重复发送给模型
+     *
+     * @param previousSummary 已有摘要，可以为空
+     * @param messages 不含摘要消息的消息列表
+     * @return 保留的消息和合并后的摘要
+     */
+    private RollingSummary foldIntoRollingSummary(String previousSummary, List<ChatMessage> messages) {
+        List<ChatMessage> keptMessages = new ArrayList<>();
+        List<ChatMessage> evictedMessages = new ArrayList<>();
+        int recentStartIndex = messages.size() - compressionConfig.getKeepRecentMessages();
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            if (message.type() == ChatMessageType.SYSTEM || i >= recentStartIndex) {
+                keptMessages.add(message);
+            } else {
+                evictedMessages.add(message);
+            }
+        }
+        if (evictedMessages.isEmpty()) {
+            return new RollingSummary(messages, previousSummary);
+        }
+
+        // 新移出的消息较多时先进行层级总结，控制单次提示词长度
+        List<ChatMessage> delta = evictedMessages.size() > compressionConfig.getChunkSize() * 2
+                ? hierarchicalSummarize(evictedMessages)
+                : evictedMessages;
+        if (previousSummary == null || previousSummary.isEmpty()) {
+            return new RollingSummary(keptMessages, summarizeMessages(delta));
+        }
+
+        String newConversation = formatConversation(delta);
+        try {
+            String summary = chatLanguageModel.chat(buildIncrementalSummarizationPrompt(previousSummary, newConversation));
+            return new RollingSummary(keptMessages, summary);
+        } catch (Exception e) {
+            // 如果LLM调用失败，将新增对话原文追加到已有摘要之后
+            logger.warn("增量总结调用失败，降级为追加对话原文", e);
+            return new RollingSummary(keptMessages, previousSummary + "\n对话总结(降级处理): " + newConversation);
+        }
+    }
+
+    /**
+     * 从消息列表中找出增量摘要消息的内容
+     */
+    private String findSummary(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            if (isSummaryMessage(message)) {
+                return ((AiMessage) message).text().substring(SUMMARY_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    private List<ChatMessage> removeSummary(List<ChatMessage> messages) {
+        return messages.stream().filter(message -> !isSummaryMessage(message)).collect(toList());
+    }
+
+    private boolean isSummaryMessage(ChatMessage message) {
+        return message.type() == ChatMessageType.AI
+                && ((AiMessage) message).text() != null
+                && ((AiMessage) message).text().startsWith(SUMMARY_PREFIX);
+    }
+
     /**
      * 使用层级递归总结进行消息压缩
      * 
@@ -134,27 +442,26 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
         // 如果消息数量较少，直接进行总结
         if (messages.size() <= compressionConfig.getChunkSize() * 2) {
             String summary = summarizeMessages(messages);
-            return Collections.singletonList(AiMessage.from("【历史对话摘要】\n" + summary));
+            return Collections.singletonList(AiMessage.from(SUMMARY_PREFIX + summary));
         }
 
         // 否则，分块处理
-        List<String> summaries = new ArrayList<>();
+        List<CompletableFuture<String>> summaries = new ArrayList<>();
         
         // 跳过系统消息（如果第一条是系统消息）
         int startIndex = (messages.get(0).type() == ChatMessageType.SYSTEM) ? 1 : 0;
         
-        // 分块总结
+        // 分块总结：同一层级的各分块并发提交，并发数受线程池大小限制
         for (int i = startIndex; i < messages.size(); i += compressionConfig.getChunkSize()) {
             int endIndex = Math.min(i + compressionConfig.getChunkSize(), messages.size());
             List<ChatMessage> chunk = messages.subList(i, endIndex);
-            String summary = summarizeMessages(chunk);
-            summaries.add(summary);
+            summaries.add(CompletableFuture.supplyAsync(() -> summarizeMessages(chunk), summarizationExecutor));
         }
 
-        // 递归处理总结结果
+        // 按提交顺序收集总结结果，保证与原对话顺序一致，再递归处理
         List<ChatMessage> summaryMessages = new ArrayList<>();
-        for (String summary : summaries) {
-            summaryMessages.add(AiMessage.from(summary));
+        for (CompletableFuture<String> summary : summaries) {
+            summaryMessages.add(AiMessage.from(summary.join()));
         }
         
         return hierarchicalSummarize(summaryMessages);
@@ -171,7 +478,28 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
             return "";
         }
 
-        // 构建对话历史字符串
+        String conversationHistory = formatConversation(messages);
+
+        // 构建医疗AI助手的专业总结提示词
+        String prompt = buildMedicalSummarizationPrompt(conversationHistory);
+
+        // 使用LLM进行总结
+        try {
+            return chatLanguageModel.chat(prompt);
+        } catch (Exception e) {
+            // 如果LLM调用失败，返回原始文本
+            logger.warn("对话总结调用失败，降级为返回对话原文", e);
+            return "对话总结(降级处理): " + conversationHistory;
+        }
+    }
+
+    /**
+     * 将消息列表转换为对话历史字符串
+     *
+     * @param messages 消息列表
+     * @return 对话历史
+     */
+    private String formatConversation(List<ChatMessage> messages) {
         StringBuilder historyBuilder = new StringBuilder();
         for (ChatMessage message : messages) {
             switch (message.type()) {
@@ -193,18 +521,7 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
                     break;
             }
         }
-
-        // 构建医疗AI助手的专业总结提示词
-        String prompt = buildMedicalSummarizationPrompt(historyBuilder.toString());
-
-        // 使用LLM进行总结
-        try {
-            return chatLanguageModel.generate(prompt);
-        } catch (Exception e) {
-            // 如果LLM调用失败，返回原始文本
-            e.printStackTrace();
-            return "对话总结(降级处理): " + historyBuilder.toString();
-        }
+        return historyBuilder.toString();
     }
 
     /**
@@ -246,4 +563,31 @@ public class HierarchicalSummarizationMemoryStore implements ChatMemoryStore {
             请基于以上对话内容，生成一个专业的医疗对话总结：
             """, conversationHistory);
     }
+
+    /**
+     * 构建增量总结提示词：将新增对话合并进已有摘要
+     *
+     * @param previousSummary 已有摘要
+     * @param newConversation 新增对话
+     * @return 完整的提示词
+     */
+    private String buildIncrementalSummarizationPrompt(String previousSummary, String newConversation) {
+        return String.format("""
+            你是一位专业的医疗AI助手，需要维护一份医患对话的滚动摘要。请将【新增对话】中的信息合并进【已有摘要】：
+
+            【合并要求】
+            1. 保留已有摘要中的全部重要医疗信息和预约信息，除非新增对话明确更正了它们
+            2. 补充新增对话中的症状、诊断、用药、检查结果、治疗建议、复诊和预约信息
+            3. 按时间顺序整理，使用简洁明了的语言，不要重复相同的内容
+
+            【已有摘要】
+            %s
+
+            【新增对话】
+            %s
+
+            【更新后的摘要】
+            请输出合并后的完整医疗对话摘要：
+            """, previousSummary, newConversation);
+    }
 }
\ No newline at end of file
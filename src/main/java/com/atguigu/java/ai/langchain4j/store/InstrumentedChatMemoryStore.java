@@ -0,0 +1,64 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+
+/**
+ * 记录耗时的聊天记忆存储（装饰器）
+ * 按存储名称和操作（get/update/delete）分别记录耗时，读取时同时记录加载的消息条数；
+ * 包在缓存外层时记录的是对话实际感受到的记忆加载耗时，缓存命中率由CachingChatMemoryStore单独统计
+ */
+public class InstrumentedChatMemoryStore implements ChatMemoryStore {
+
+    private final ChatMemoryStore delegate;
+
+    private final Timer getTimer;
+
+    private final Timer updateTimer;
+
+    private final Timer deleteTimer;
+
+    private final DistributionSummary loadedMessages;
+
+    public InstrumentedChatMemoryStore(String name, ChatMemoryStore delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.getTimer = timer(name, "get", meterRegistry);
+        this.updateTimer = timer(name, "update", meterRegistry);
+        this.deleteTimer = timer(name, "delete", meterRegistry);
+        this.loadedMessages = DistributionSummary.builder("xiaozhi.memory.messages")
+                .description("每次加载的记忆消息条数")
+                .tag("store", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        List<ChatMessage> messages = getTimer.record(() -> delegate.getMessages(memoryId));
+        loadedMessages.record(messages == null ? 0 : messages.size());
+        return messages;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        updateTimer.record(() -> delegate.updateMessages(memoryId, messages));
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        deleteTimer.record(() -> delegate.deleteMessages(memoryId));
+    }
+
+    private static Timer timer(String name, String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("xiaozhi.memory.latency")
+                .description("聊天记忆读写耗时")
+                .tag("store", name)
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+}
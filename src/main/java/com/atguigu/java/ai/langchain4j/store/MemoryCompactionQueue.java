@@ -0,0 +1,67 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 记忆压缩队列
+ * 按memoryId去重排队，由后台线程池异步执行压缩，避免阻塞对话请求线程
+ */
+public class MemoryCompactionQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryCompactionQueue.class);
+
+    /**
+     * 已排队但尚未开始执行的memoryId，用于去重
+     */
+    private final Set<Object> pending = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService workers;
+
+    private final Consumer<Object> compactor;
+
+    public MemoryCompactionQueue(int workerCount, Consumer<Object> compactor) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), runnable -> {
+            Thread thread = new Thread(runnable, "memory-compaction-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor = compactor;
+    }
+
+    /**
+     * 将memoryId放入压缩队列，同一memoryId在开始执行前只会排队一次
+     *
+     * @param memoryId 对话id
+     */
+    public void enqueue(Object memoryId) {
+        if (!pending.add(memoryId)) {
+            return;
+        }
+        workers.execute(() -> {
+            // 开始执行前移出去重集合，压缩期间到达的新轮次可以再次排队
+            pending.remove(memoryId);
+            try {
+                compactor.accept(memoryId);
+            } catch (Exception e) {
+                logger.error("异步压缩 memoryId={} 的聊天记录时出错: {}", memoryId, e.getMessage(), e);
+            }
+        });
+    }
+
+    public int pendingSize() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
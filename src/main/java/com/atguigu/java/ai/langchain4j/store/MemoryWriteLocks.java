@@ -0,0 +1,52 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按memoryId分段的写锁
+ * 同一memoryId的写入在进程内串行执行，不同memoryId大概率落在不同分段上，互不阻塞
+ */
+@Component
+public class MemoryWriteLocks {
+
+    @Autowired
+    private MemoryConfig memoryConfig;
+
+    private ReentrantLock[] stripes;
+
+    @PostConstruct
+    public void initStripes() {
+        stripes = new ReentrantLock[Math.max(1, memoryConfig.getWriteLockStripes())];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 持有memoryId对应分段的锁执行写入
+     *
+     * @param memoryId 对话id
+     * @param action   写入逻辑
+     */
+    public void run(Object memoryId, Runnable action) {
+        ReentrantLock lock = stripeFor(memoryId);
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(Object memoryId) {
+        // memoryId可能是Long或Integer，统一按字符串取哈希
+        int hash = String.valueOf(memoryId).hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+}
@@ -0,0 +1,100 @@
+package com.atguigu.java.ai.langchain4j.store;
+
+import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消息序号
+ * 每条保存的消息在所属memoryId内有一个递增的序号，与消息列表一一对应地保存在messageSeqs字段中；
+ * 读取和写入时按对象身份记下每个消息实例的序号，合并并发写入时据此区分调用方读到过的消息和新增的消息，
+ * 内容相同的短消息（如“好的”“谢谢”）不会被误认为同一条
+ */
+public final class MessageSequences {
+
+    /**
+     * 弱引用键按对象身份比较，调用方不再持有消息实例后自动回收
+     */
+    private final Cache<ChatMessage, Long> sequences = Caffeine.newBuilder().weakKeys().build();
+
+    /**
+     * 记下读取到或已写入的消息实例的序号
+     */
+    public void register(List<ChatMessage> messages, List<Long> seqs) {
+        for (int i = 0; i < messages.size(); i++) {
+            sequences.put(messages.get(i), seqs.get(i));
+        }
+    }
+
+    /**
+     * @return 消息实例的序号；不是从存储中读取或写入的实例（即调用方新增的消息）时返回null
+     */
+    public Long seqOf(ChatMessage message) {
+        return sequences.getIfPresent(message);
+    }
+
+    /**
+     * 已保存消息的序号；旧文档没有保存序号时按位置编号
+     */
+    public static List<Long> storedSeqs(ChatMessages stored, int size) {
+        List<Long> seqs = stored == null ? null : stored.getMessageSeqs();
+        if (seqs != null && seqs.size() == size) {
+            return seqs;
+        }
+        List<Long> positions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            positions.add((long) i);
+        }
+        return positions;
+    }
+
+    /**
+     * 下一条新消息的序号
+     */
+    public static long nextSeq(ChatMessages stored, List<Long> storedSeqs) {
+        if (stored != null && stored.getNextSeq() != null) {
+            return stored.getNextSeq();
+        }
+        long max = -1;
+        for (Long seq : storedSeqs) {
+            max = Math.max(max, seq);
+        }
+        return max + 1;
+    }
+
+    /**
+     * 压缩改写后的消息序号：保留下来的消息沿用原序号，新生成的摘要消息使用被它替换的消息中最大的序号，
+     * 这样摘要不会被当作调用方没有读到过的新消息
+     */
+    public static List<Long> rewrittenSeqs(List<ChatMessage> before, List<Long> beforeSeqs, List<ChatMessage> after) {
+        Map<ChatMessage, Long> kept = new IdentityHashMap<>();
+        for (ChatMessage message : after) {
+            kept.put(message, null);
+        }
+        Map<ChatMessage, Long> original = new IdentityHashMap<>();
+        long evictedMax = -1;
+        for (int i = 0; i < before.size(); i++) {
+            original.put(before.get(i), beforeSeqs.get(i));
+            if (!kept.containsKey(before.get(i))) {
+                evictedMax = Math.max(evictedMax, beforeSeqs.get(i));
+            }
+        }
+        List<Long> seqs = new ArrayList<>(after.size());
+        long previous = 0;
+        for (ChatMessage message : after) {
+            Long seq = original.get(message);
+            if (seq == null) {
+                seq = evictedMax >= 0 ? evictedMax : previous;
+            }
+            seqs.add(seq);
+            previous = seq;
+        }
+        return seqs;
+    }
+}
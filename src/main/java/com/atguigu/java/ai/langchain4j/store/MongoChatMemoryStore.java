@@ -1,17 +1,22 @@
 package com.atguigu.java.ai.langchain4j.store;
 
 import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.atguigu.java.ai.langchain4j.store.codec.ChatMessagesCodec;
+import com.mongodb.client.result.UpdateResult;
 import dev.langchain4j.data.message.ChatMessage;
-import dev.langchain4j.data.message.ChatMessageDeserializer;
-import dev.langchain4j.data.message.ChatMessageSerializer;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -19,22 +24,30 @@ import java.util.List;
 public class MongoChatMemoryStore implements ChatMemoryStore {
     @Autowired
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private ChatMessagesCodec chatMessagesCodec;
+    @Autowired
+    private MemoryWriteLocks memoryWriteLocks;
+    @Autowired
+    private MemoryConfig memoryConfig;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    //读取和写入过的消息实例的序号
+    private final MessageSequences messageSequences = new MessageSequences();
     @Override
     public List<ChatMessage> getMessages(Object memoryId) {
         Criteria criteria = Criteria.where("memoryId").is(memoryId);
         Query query = new Query(criteria);
         ChatMessages chatMessages = mongoTemplate.findOne(query, ChatMessages.class);
         if(chatMessages == null) return new LinkedList<>();
-        return ChatMessageDeserializer.messagesFromJson(chatMessages.getContent());
+        List<ChatMessage> messages = chatMessagesCodec.read(chatMessages);
+        messageSequences.register(messages, MessageSequences.storedSeqs(chatMessages, messages.size()));
+        return messages;
     }
     @Override
     public void updateMessages(Object memoryId, List<ChatMessage> messages) {
-        Criteria criteria = Criteria.where("memoryId").is(memoryId);
-        Query query = new Query(criteria);
-        Update update = new Update();
-        update.set("content", ChatMessageSerializer.messagesToJson(messages));
-        //根据query条件能查询出文档，则修改文档；否则新增文档
-        mongoTemplate.upsert(query, update, ChatMessages.class);
+        //同一memoryId在进程内串行写入，跨实例的并发写入由版本号比较保证
+        memoryWriteLocks.run(memoryId, () -> updateMessagesWithRetry(memoryId, messages));
     }
     @Override
     public void deleteMessages(Object memoryId) {
@@ -42,4 +55,52 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
         Query query = new Query(criteria);
         mongoTemplate.remove(query, ChatMessages.class);
     }
+
+    private void updateMessagesWithRetry(Object memoryId, List<ChatMessage> messages) {
+        int maxAttempts = Math.max(1, memoryConfig.getWriteMaxRetries());
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            ChatMessages stored = mongoTemplate.findOne(new Query(Criteria.where("memoryId").is(memoryId)), ChatMessages.class);
+            List<ChatMessage> storedMessages = stored == null ? List.of() : chatMessagesCodec.read(stored);
+            List<Long> storedSeqs = MessageSequences.storedSeqs(stored, storedMessages.size());
+            //调用方读取之后有其他写入时，按消息序号合并而不是覆盖
+            ChatMessagesMerger.Result toWrite = ChatMessagesMerger.reconcile(storedMessages, storedSeqs,
+                    MessageSequences.nextSeq(stored, storedSeqs), messages, messageSequences::seqOf);
+            if (compareAndSet(memoryId, stored, toWrite)) {
+                messageSequences.register(toWrite.messages(), toWrite.seqs());
+                if (toWrite.merged()) {
+                    //保存的消息与调用方传入的不同，通知缓存失效
+                    eventPublisher.publishEvent(new ChatMemoryChangedEvent(memoryId));
+                }
+                return;
+            }
+        }
+        throw new OptimisticLockingFailureException("memoryId=" + memoryId + " 的聊天记录写入冲突，重试" + maxAttempts + "次后仍失败");
+    }
+
+    /**
+     * 以读取时的版本号作为条件写入，版本号不一致时返回false
+     */
+    private boolean compareAndSet(Object memoryId, ChatMessages stored, ChatMessagesMerger.Result toWrite) {
+        List<ChatMessage> messages = toWrite.messages();
+        //version为null时同样可以匹配到缺少该字段的旧文档
+        Criteria criteria = Criteria.where("memoryId").is(memoryId).and("version").is(stored == null ? null : stored.getVersion());
+        Query query = new Query(criteria);
+        Update update = new Update();
+        chatMessagesCodec.write(update, messages);
+        update.set("messageCount", messages.size());
+        update.set("messageSeqs", toWrite.seqs());
+        update.set("nextSeq", toWrite.nextSeq());
+        update.set("lastUpdatedAt", new Date());
+        update.inc("version", 1);
+        if (stored != null) {
+            return mongoTemplate.updateFirst(query, update, ChatMessages.class).getMatchedCount() > 0;
+        }
+        try {
+            //文档不存在时新增；其他实例抢先插入时唯一索引冲突，按版本冲突处理
+            UpdateResult result = mongoTemplate.upsert(query, update, ChatMessages.class);
+            return result.getMatchedCount() > 0 || result.getUpsertedId() != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package com.atguigu.java.ai.langchain4j.store.codec;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 紧凑的二进制编解码器
+ * <p>
+ * 格式：1字节版本号 + 1字节标志位 + 消息体。消息体为消息数量加逐条消息，
+ * 每条消息以1字节类型开头，字段均为长度前缀的UTF-8字符串（长度-1表示null）。
+ * 无法用固定字段表示的消息（如多模态用户消息）以JSON字段整体保存。
+ * 标志位COMPRESSED表示消息体经过Deflate压缩。
+ */
+public class BinaryChatMessageCodec implements ChatMessageCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private static final byte TYPE_JSON = 0;
+    private static final byte TYPE_SYSTEM = 1;
+    private static final byte TYPE_USER = 2;
+    private static final byte TYPE_AI = 3;
+    private static final byte TYPE_TOOL_EXECUTION_RESULT = 4;
+
+    private final boolean compression;
+
+    /**
+     * 消息体超过该字节数才压缩，短对话压缩收益不足以抵消开销
+     */
+    private final int compressionThreshold;
+
+    public BinaryChatMessageCodec(boolean compression, int compressionThreshold) {
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] encode(List<ChatMessage> messages) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeInt(messages.size());
+            for (ChatMessage message : messages) {
+                writeMessage(out, message);
+            }
+            out.flush();
+
+            boolean compressed = compression && body.size() > compressionThreshold;
+            ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 2);
+            result.write(VERSION_1);
+            result.write(compressed ? FLAG_COMPRESSED : 0);
+            if (compressed) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (OutputStream deflaterOut = new DeflaterOutputStream(result, deflater)) {
+                    body.writeTo(deflaterOut);
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                body.writeTo(result);
+            }
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("聊天消息编码失败", e);
+        }
+    }
+
+    @Override
+    public List<ChatMessage> decode(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != VERSION_1) {
+            throw new IllegalStateException("不支持的聊天消息编码版本: " + (bytes.length == 0 ? "empty" : bytes[0]));
+        }
+        InputStream body = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+        if ((bytes[1] & FLAG_COMPRESSED) != 0) {
+            body = new InflaterInputStream(body);
+        }
+        try (DataInputStream in = new DataInputStream(body)) {
+            int count = in.readInt();
+            List<ChatMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(readMessage(in));
+            }
+            return messages;
+        } catch (IOException e) {
+            throw new IllegalStateException("聊天消息解码失败", e);
+        }
+    }
+
+    private static void writeMessage(DataOutputStream out, ChatMessage message) throws IOException {
+        if (message instanceof SystemMessage systemMessage) {
+            out.writeByte(TYPE_SYSTEM);
+            writeString(out, systemMessage.text());
+        } else if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+            out.writeByte(TYPE_USER);
+            writeString(out, userMessage.name());
+            writeString(out, userMessage.singleText());
+        } else if (message instanceof AiMessage aiMessage) {
+            out.writeByte(TYPE_AI);
+            writeString(out, aiMessage.text());
+            List<ToolExecutionRequest> requests = aiMessage.hasToolExecutionRequests()
+                    ? aiMessage.toolExecutionRequests() : List.of();
+            out.writeInt(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                writeString(out, request.id());
+                writeString(out, request.name());
+                writeString(out, request.arguments());
+            }
+        } else if (message instanceof ToolExecutionResultMessage toolMessage) {
+            out.writeByte(TYPE_TOOL_EXECUTION_RESULT);
+            writeString(out, toolMessage.id());
+            writeString(out, toolMessage.toolName());
+            writeString(out, toolMessage.text());
+        } else {
+            out.writeByte(TYPE_JSON);
+            writeString(out, ChatMessageSerializer.messageToJson(message));
+        }
+    }
+
+    private static ChatMessage readMessage(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_SYSTEM:
+                return SystemMessage.from(readString(in));
+            case TYPE_USER: {
+                String name = readString(in);
+                String text = readString(in);
+                return name == null ? UserMessage.from(text) : UserMessage.from(name, text);
+            }
+            case TYPE_AI: {
+                String text = readString(in);
+                int requestCount = in.readInt();
+                if (requestCount == 0) {
+                    return AiMessage.from(text);
+                }
+                List<ToolExecutionRequest> requests = new ArrayList<>(requestCount);
+                for (int i = 0; i < requestCount; i++) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id(readString(in))
+                            .name(readString(in))
+                            .arguments(readString(in))
+                            .build());
+                }
+                return text == null ? AiMessage.from(requests) : AiMessage.from(text, requests);
+            }
+            case TYPE_TOOL_EXECUTION_RESULT:
+                return ToolExecutionResultMessage.from(readString(in), readString(in), readString(in));
+            case TYPE_JSON:
+                return ChatMessageDeserializer.messageFromJson(readString(in));
+            default:
+                throw new IOException("未知的消息类型: " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
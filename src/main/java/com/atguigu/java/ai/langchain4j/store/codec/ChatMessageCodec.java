@@ -0,0 +1,15 @@
+package com.atguigu.java.ai.langchain4j.store.codec;
+
+import dev.langchain4j.data.message.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 聊天消息列表的编解码器
+ */
+public interface ChatMessageCodec {
+
+    byte[] encode(List<ChatMessage> messages);
+
+    List<ChatMessage> decode(byte[] bytes);
+}
@@ -0,0 +1,56 @@
+package com.atguigu.java.ai.langchain4j.store.codec;
+
+import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * chat_messages文档的消息读写
+ * 根据配置以JSON文本（content字段）或二进制（payload字段）保存，读取时两种格式都兼容
+ */
+@Component
+public class ChatMessagesCodec {
+
+    private final MemoryConfig memoryConfig;
+
+    private final ChatMessageCodec binaryCodec;
+
+    public ChatMessagesCodec(MemoryConfig memoryConfig) {
+        this.memoryConfig = memoryConfig;
+        this.binaryCodec = new BinaryChatMessageCodec(memoryConfig.isCodecCompression(),
+                memoryConfig.getCodecCompressionThreshold());
+    }
+
+    /**
+     * 读取文档中的消息列表，优先读取二进制payload，否则读取旧的JSON content
+     */
+    public List<ChatMessage> read(ChatMessages chatMessages) {
+        if (chatMessages.getPayload() != null) {
+            return binaryCodec.decode(chatMessages.getPayload());
+        }
+        if (chatMessages.getContent() != null) {
+            return ChatMessageDeserializer.messagesFromJson(chatMessages.getContent());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 按配置的格式写入消息列表，并清除另一种格式的字段
+     */
+    public void write(Update update, List<ChatMessage> messages) {
+        if (memoryConfig.isBinaryCodec()) {
+            update.set("payload", binaryCodec.encode(messages));
+            update.unset("content");
+        } else {
+            update.set("content", ChatMessageSerializer.messagesToJson(messages));
+            update.unset("payload");
+        }
+    }
+}
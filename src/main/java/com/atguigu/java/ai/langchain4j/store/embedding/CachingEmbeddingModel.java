@@ -0,0 +1,228 @@
+package com.atguigu.java.ai.langchain4j.store.embedding;
+
+import com.atguigu.java.ai.langchain4j.bean.EmbeddingCacheEntry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的向量模型（装饰器）
+ * 按模型名称和文本内容的摘要缓存向量：一级缓存为本地LRU，二级缓存（可选）保存在MongoDB中，多个实例和重启后共享
+ * embedAll时只把未命中的文本去重后按批次交给底层模型，知识库重新导入时未变化的片段不会重复计算
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private final EmbeddingModel delegate;
+
+    private final String modelName;
+
+    private final int batchSize;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Duration persistentTtl;
+
+    private final Cache<String, float[]> cache;
+
+    private final Counter persistentHits;
+
+    private final Counter modelCalls;
+
+    private final Timer modelLatency;
+
+    private volatile int dimension;
+
+    /**
+     * @param delegate       实际调用的向量模型
+     * @param modelName      模型名称，参与缓存键计算，切换模型后不会读到旧向量
+     * @param maximumSize    本地缓存的最大条数
+     * @param batchSize      每次调用底层模型的最大文本数量
+     * @param mongoTemplate  二级缓存，为null时不启用
+     * @param persistentTtl  二级缓存的过期时间
+     * @param meterRegistry  指标注册
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, long maximumSize, int batchSize,
+                                 MongoTemplate mongoTemplate, Duration persistentTtl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.batchSize = Math.max(1, batchSize);
+        this.mongoTemplate = mongoTemplate;
+        this.persistentTtl = persistentTtl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "embeddings");
+        this.persistentHits = Counter.builder("xiaozhi.embedding.cache.persistent.hits").register(meterRegistry);
+        this.modelCalls = Counter.builder("xiaozhi.embedding.model.calls").register(meterRegistry);
+        this.modelLatency = Timer.builder("xiaozhi.embedding.model.latency")
+                .description("缓存未命中时调用向量模型的耗时")
+                .tag("model", modelName)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        Response<List<Embedding>> response = embedAll(List.of(textSegment));
+        return Response.from(response.content().get(0), response.tokenUsage());
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        List<String> keys = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            keys.add(cacheKey(segment.text()));
+        }
+
+        // 一级缓存
+        Map<String, float[]> found = new LinkedHashMap<>(cache.getAllPresent(keys));
+
+        // 未命中的文本去重，相同内容只计算一次
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < textSegments.size(); i++) {
+            if (!found.containsKey(keys.get(i))) {
+                missing.putIfAbsent(keys.get(i), textSegments.get(i).text());
+            }
+        }
+
+        // 二级缓存
+        if (!missing.isEmpty() && mongoTemplate != null) {
+            for (Map.Entry<String, float[]> entry : findPersistent(missing.keySet()).entrySet()) {
+                found.put(entry.getKey(), entry.getValue());
+                cache.put(entry.getKey(), entry.getValue());
+                missing.remove(entry.getKey());
+                persistentHits.increment();
+            }
+        }
+
+        TokenUsage tokenUsage = null;
+        if (!missing.isEmpty()) {
+            tokenUsage = embedMissing(missing, found);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            // 返回副本，调用方修改向量不会影响缓存
+            embeddings.add(Embedding.from(found.get(key).clone()));
+        }
+        return Response.from(embeddings, tokenUsage);
+    }
+
+    @Override
+    public int dimension() {
+        // 底层模型可能通过一次实际调用来获取维度，结果缓存下来
+        if (dimension == 0) {
+            dimension = delegate.dimension();
+        }
+        return dimension;
+    }
+
+    /**
+     * 分批调用底层模型，结果写入found和两级缓存
+     *
+     * @return 所有批次的token用量之和
+     */
+    private TokenUsage embedMissing(Map<String, String> missing, Map<String, float[]> found) {
+        List<String> keys = new ArrayList<>(missing.keySet());
+        TokenUsage tokenUsage = null;
+        for (int start = 0; start < keys.size(); start += batchSize) {
+            List<String> batchKeys = keys.subList(start, Math.min(keys.size(), start + batchSize));
+            List<TextSegment> batch = new ArrayList<>(batchKeys.size());
+            for (String key : batchKeys) {
+                batch.add(TextSegment.from(missing.get(key)));
+            }
+            Response<List<Embedding>> response = modelLatency.record(() -> delegate.embedAll(batch));
+            modelCalls.increment();
+            tokenUsage = tokenUsage == null ? response.tokenUsage() : tokenUsage.add(response.tokenUsage());
+
+            List<EmbeddingCacheEntry> entries = new ArrayList<>(batchKeys.size());
+            Date expiresAt = new Date(System.currentTimeMillis() + persistentTtl.toMillis());
+            for (int i = 0; i < batchKeys.size(); i++) {
+                float[] vector = response.content().get(i).vector();
+                found.put(batchKeys.get(i), vector);
+                cache.put(batchKeys.get(i), vector);
+                entries.add(new EmbeddingCacheEntry(batchKeys.get(i), modelName, vector, expiresAt));
+            }
+            savePersistent(entries);
+        }
+        return tokenUsage;
+    }
+
+    private Map<String, float[]> findPersistent(Iterable<String> keys) {
+        Map<String, float[]> result = new LinkedHashMap<>();
+        try {
+            Query query = new Query(Criteria.where("_id").in(toList(keys)).and("expiresAt").gt(new Date()));
+            for (EmbeddingCacheEntry entry : mongoTemplate.find(query, EmbeddingCacheEntry.class)) {
+                if (entry.getVector() != null) {
+                    result.put(entry.getCacheKey(), entry.getVector());
+                }
+            }
+        } catch (Exception e) {
+            // 二级缓存不可用时直接调用模型
+            logger.warn("读取向量二级缓存失败: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    private void savePersistent(List<EmbeddingCacheEntry> entries) {
+        if (mongoTemplate == null) {
+            return;
+        }
+        try {
+            for (EmbeddingCacheEntry entry : entries) {
+                mongoTemplate.save(entry);
+            }
+        } catch (Exception e) {
+            logger.warn("写入向量二级缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private String cacheKey(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> toList(Iterable<String> keys) {
+        List<String> list = new ArrayList<>();
+        keys.forEach(list::add);
+        return list;
+    }
+}
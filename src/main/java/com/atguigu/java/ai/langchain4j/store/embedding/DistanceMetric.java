@@ -0,0 +1,89 @@
+package com.atguigu.java.ai.langchain4j.store.embedding;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 向量距离度量，距离越小越相似
+ */
+public enum DistanceMetric {
+
+    /**
+     * 余弦距离：写入时向量已归一化，距离为1减点积
+     */
+    COSINE {
+        @Override
+        float distance(float[] query, FloatBuffer vectors, int offset, int dimension) {
+            return 1 - dot(query, vectors, offset, dimension);
+        }
+
+        @Override
+        double toScore(float distance) {
+            // 余弦相似度从[-1, 1]映射到[0, 1]，与langchain4j的RelevanceScore一致
+            return Math.max(0, Math.min(1, (2 - distance) / 2));
+        }
+    },
+
+    /**
+     * 内积：用于已归一化或需要按模长加权的向量
+     */
+    DOT {
+        @Override
+        float distance(float[] query, FloatBuffer vectors, int offset, int dimension) {
+            return -dot(query, vectors, offset, dimension);
+        }
+
+        @Override
+        double toScore(float distance) {
+            return Math.max(0, Math.min(1, (1 - distance) / 2));
+        }
+    },
+
+    /**
+     * 欧氏距离（平方）
+     */
+    EUCLIDEAN {
+        @Override
+        float distance(float[] query, FloatBuffer vectors, int offset, int dimension) {
+            float sum = 0;
+            for (int i = 0; i < dimension; i++) {
+                float diff = query[i] - vectors.get(offset + i);
+                sum += diff * diff;
+            }
+            return sum;
+        }
+
+        @Override
+        double toScore(float distance) {
+            return 1 / (1 + Math.sqrt(distance));
+        }
+    };
+
+    /**
+     * 计算查询向量与存储中一个向量的距离
+     */
+    abstract float distance(float[] query, FloatBuffer vectors, int offset, int dimension);
+
+    /**
+     * 距离转换为[0, 1]的相关性得分，越大越相似
+     */
+    abstract double toScore(float distance);
+
+    /**
+     * 写入前是否需要归一化
+     */
+    boolean normalizes() {
+        return this == COSINE;
+    }
+
+    private static float dot(float[] query, FloatBuffer vectors, int offset, int dimension) {
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * vectors.get(offset + i);
+        }
+        return sum;
+    }
+
+    public static DistanceMetric from(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,840 @@
+package com.atguigu.java.ai.langchain4j.store.embedding;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 本地HNSW向量索引
+ * 向量保存在堆外（或内存映射文件）的连续float存储中，图结构和文本片段保存在堆内，
+ * 检索不经过网络，适合医院知识库这种规模的数据
+ * 指定目录时：向量写入内存映射文件 vectors.f32，图结构和文本片段按刷盘间隔批量保存到 graph.bin（关闭或调用flush时立即保存），
+ * 重启后自动加载；两次刷盘之间进程退出时丢失的是这段时间内的写入，已保存的索引保持完整
+ * 删除为逻辑删除，被删除的节点仍参与图的遍历但不会出现在结果中；
+ * 已删除节点的占比达到压缩阈值时，用剩余的节点重建索引，回收已删除节点的槽位
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswEmbeddingStore.class);
+
+    private static final int GRAPH_MAGIC = 0x48475246;
+
+    /**
+     * 版本2在文件头中增加了与向量文件对应的代数
+     */
+    private static final int GRAPH_VERSION = 2;
+
+    private static final String VECTORS_FILE = "vectors.f32";
+
+    private static final String GRAPH_FILE = "graph.bin";
+
+    private static final String STORE_ID_FILE = "store.id";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path directory;
+
+    private final DistanceMetric metric;
+
+    /**
+     * 每个节点在第1层及以上保留的邻居数量，第0层保留2倍
+     */
+    private final int m;
+
+    private final int efConstruction;
+
+    private final int efSearch;
+
+    private final double levelMultiplier;
+
+    /**
+     * 已删除节点占全部节点的比例达到该值时压缩，0表示不压缩
+     */
+    private final double compactionRatio;
+
+    /**
+     * 按刷盘间隔保存索引的后台线程，未指定目录或刷盘间隔为0时为null（每批写操作后立即保存）
+     */
+    private final ScheduledExecutorService flusher;
+
+    private final Object flushMonitor = new Object();
+
+    /**
+     * 上次保存后是否有写操作
+     */
+    private volatile boolean dirty;
+
+    private final Random random = new Random(42);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private VectorStorage storage;
+
+    private int size;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * neighbors[node][level]：第0个元素为邻居数量，之后是邻居节点编号
+     */
+    private int[][][] neighbors = new int[16][][];
+
+    private String[] ids = new String[16];
+
+    private TextSegment[] segments = new TextSegment[16];
+
+    private final BitSet deleted = new BitSet();
+
+    private final Map<String, Integer> nodeById = new HashMap<>();
+
+    /**
+     * 索引的标识，已有数据被加载时保持不变；新建索引或已有数据被忽略时重新生成
+     */
+    private final String storeId;
+
+    /**
+     * @param directory      持久化目录，为null时只保存在内存中
+     * @param metric         距离度量
+     * @param m              每层邻居数量
+     * @param efConstruction 构建时的候选集大小
+     * @param efSearch       检索时的候选集大小
+     */
+    public HnswEmbeddingStore(Path directory, DistanceMetric metric, int m, int efConstruction, int efSearch) {
+        this(directory, metric, m, efConstruction, efSearch, 0, 0.3);
+    }
+
+    /**
+     * @param directory       持久化目录，为null时只保存在内存中
+     * @param metric          距离度量
+     * @param m               每层邻居数量
+     * @param efConstruction  构建时的候选集大小
+     * @param efSearch        检索时的候选集大小
+     * @param flushIntervalMs 保存图结构的间隔（毫秒），为0时每批写操作后立即保存
+     * @param compactionRatio 已删除节点占比达到该值时压缩，为0时不压缩
+     */
+    public HnswEmbeddingStore(Path directory, DistanceMetric metric, int m, int efConstruction, int efSearch,
+                              long flushIntervalMs, double compactionRatio) {
+        this.directory = directory;
+        this.metric = metric;
+        this.m = Math.max(2, m);
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1 / Math.log(this.m);
+        this.compactionRatio = compactionRatio;
+        storeId = directory == null ? UUID.randomUUID().toString() : loadStoreId(load());
+        if (directory != null && flushIntervalMs > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hnsw-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        addAll(ids, embeddings, embedded);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids、embeddings和embedded的数量必须一致");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), embeddings.get(i).vector(), embedded == null ? null : embedded.get(i));
+            }
+            dirty = true;
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入本地向量索引失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        afterWrite();
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer node = nodeById.remove(id);
+                if (node != null) {
+                    markDeleted(node);
+                }
+            }
+            dirty = true;
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("压缩本地向量索引失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        afterWrite();
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            for (int node = 0; node < size; node++) {
+                if (!deleted.get(node) && segments[node] != null && filter.test(segments[node].metadata())) {
+                    nodeById.remove(ids[node]);
+                    markDeleted(node);
+                }
+            }
+            dirty = true;
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("压缩本地向量索引失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        afterWrite();
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            nodeById.clear();
+            deleted.set(0, size);
+            for (int node = 0; node < size; node++) {
+                segments[node] = null;
+            }
+            dirty = true;
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("压缩本地向量索引失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        afterWrite();
+    }
+
+    /**
+     * 立即保存上次保存之后的写操作；保存期间检索不受影响，写操作等待保存完成
+     */
+    public void flush() {
+        if (directory == null) {
+            return;
+        }
+        synchronized (flushMonitor) {
+            lock.readLock().lock();
+            try {
+                if (dirty) {
+                    persist(null);
+                    dirty = false;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = prepare(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            FloatBuffer vectors = storage.vectors();
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(query, vectors, current, level);
+            }
+            // 有过滤条件或存在已删除节点时扩大候选集，保证过滤后仍有足够的结果
+            int ef = Math.max(efSearch, maxResults);
+            if (filter != null || !deleted.isEmpty()) {
+                ef = Math.max(ef, maxResults * 4);
+            }
+            List<Candidate> candidates = searchLayer(query, vectors, current, ef, 0);
+            candidates.sort(Comparator.comparingDouble(Candidate::distance));
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                if (matches.size() >= maxResults) {
+                    break;
+                }
+                int node = candidate.node();
+                if (deleted.get(node)) {
+                    continue;
+                }
+                double score = metric.toScore(candidate.distance());
+                if (score < request.minScore()) {
+                    break;
+                }
+                TextSegment segment = segments[node];
+                if (filter != null && (segment == null || !filter.test(segment.metadata()))) {
+                    continue;
+                }
+                matches.add(new EmbeddingMatch<>(score, ids[node], Embedding.from(storage.read(node)), segment));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引的标识，导入清单据此判断记录的片段是否还在当前索引中
+     */
+    public String storeId() {
+        return storeId;
+    }
+
+    /**
+     * 未删除的向量数量
+     */
+    public int count() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+        lock.writeLock().lock();
+        try {
+            if (storage != null) {
+                storage.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(String id, float[] rawVector, TextSegment segment) throws IOException {
+        float[] vector = prepare(rawVector);
+        if (storage == null) {
+            storage = new VectorStorage(directory == null ? null : directory.resolve(VECTORS_FILE), vector.length, 1024);
+        } else if (vector.length != storage.dimension()) {
+            throw new IllegalArgumentException("向量维度不一致：期望 " + storage.dimension() + "，实际 " + vector.length);
+        }
+        Integer previous = nodeById.get(id);
+        if (previous != null) {
+            // 相同id重复写入时替换旧节点
+            markDeleted(previous);
+        }
+
+        int node = size++;
+        ensureCapacity(size);
+        storage.write(node, vector);
+        ids[node] = id;
+        segments[node] = segment;
+        nodeById.put(id, node);
+
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        neighbors[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            neighbors[node][l] = new int[maxConnections(l) + 1];
+        }
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        FloatBuffer vectors = storage.vectors();
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, vectors, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, vectors, current, efConstruction, l);
+            List<Candidate> selected = selectNeighbors(candidates, m, vectors);
+            for (Candidate neighbor : selected) {
+                addLink(node, neighbor.node(), l);
+                addLink(neighbor.node(), node, l);
+            }
+            current = closest(candidates).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 启发式选择邻居：候选按距离从近到远，只保留比已选邻居更靠近新节点的候选，使邻居分布在不同方向上
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int count, FloatBuffer vectors) {
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        List<Candidate> selected = new ArrayList<>(count);
+        List<Candidate> skipped = new ArrayList<>();
+        int dimension = storage.dimension();
+        for (Candidate candidate : sorted) {
+            if (selected.size() >= count) {
+                break;
+            }
+            float[] candidateVector = storage.read(candidate.node());
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (metric.distance(candidateVector, vectors, chosen.node() * dimension, dimension) < candidate.distance()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        // 邻居不足时用被跳过的候选补足
+        for (int i = 0; i < skipped.size() && selected.size() < count; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * 添加一条单向连接，邻居已满时保留距离最近的maxConnections个
+     */
+    private void addLink(int from, int to, int level) {
+        int[] links = neighbors[from][level];
+        int linkCount = links[0];
+        for (int i = 1; i <= linkCount; i++) {
+            if (links[i] == to) {
+                return;
+            }
+        }
+        int maxConnections = maxConnections(level);
+        if (linkCount < maxConnections) {
+            links[linkCount + 1] = to;
+            links[0] = linkCount + 1;
+            return;
+        }
+        FloatBuffer vectors = storage.vectors();
+        int dimension = storage.dimension();
+        float[] fromVector = storage.read(from);
+        List<Candidate> candidates = new ArrayList<>(linkCount + 1);
+        for (int i = 1; i <= linkCount; i++) {
+            candidates.add(new Candidate(links[i], metric.distance(fromVector, vectors, links[i] * dimension, dimension)));
+        }
+        candidates.add(new Candidate(to, metric.distance(fromVector, vectors, to * dimension, dimension)));
+        List<Candidate> selected = selectNeighbors(candidates, maxConnections, vectors);
+        links[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            links[i + 1] = selected.get(i).node();
+        }
+    }
+
+    /**
+     * 在一层中从入口节点出发贪心地移动到距离查询最近的节点
+     */
+    private int greedyClosest(float[] query, FloatBuffer vectors, int start, int level) {
+        int dimension = storage.dimension();
+        int current = start;
+        float currentDistance = metric.distance(query, vectors, current * dimension, dimension);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = neighbors[current][level];
+            for (int i = 1; i <= links[0]; i++) {
+                int candidate = links[i];
+                float distance = metric.distance(query, vectors, candidate * dimension, dimension);
+                if (distance < currentDistance) {
+                    current = candidate;
+                    currentDistance = distance;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在一层中做最佳优先搜索，返回最近的ef个节点（无序）
+     */
+    private List<Candidate> searchLayer(float[] query, FloatBuffer vectors, int start, int ef, int level) {
+        int dimension = storage.dimension();
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance).reversed());
+        Candidate first = new Candidate(start, metric.distance(query, vectors, start * dimension, dimension));
+        visited.set(start);
+        toVisit.add(first);
+        nearest.add(first);
+        while (!toVisit.isEmpty()) {
+            Candidate current = toVisit.poll();
+            if (nearest.size() >= ef && current.distance() > nearest.peek().distance()) {
+                break;
+            }
+            int[][] nodeLinks = neighbors[current.node()];
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] links = nodeLinks[level];
+            for (int i = 1; i <= links[0]; i++) {
+                int neighbor = links[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float distance = metric.distance(query, vectors, neighbor * dimension, dimension);
+                if (nearest.size() < ef || distance < nearest.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbor, distance);
+                    toVisit.add(candidate);
+                    nearest.add(candidate);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(nearest);
+    }
+
+    private static Candidate closest(List<Candidate> candidates) {
+        Candidate best = candidates.get(0);
+        for (Candidate candidate : candidates) {
+            if (candidate.distance() < best.distance()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? m * 2 : m;
+    }
+
+    /**
+     * 没有后台刷盘时每批写操作后立即保存
+     */
+    private void afterWrite() {
+        if (flusher == null) {
+            flush();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("保存本地向量索引失败，将在下次刷盘时重试: {}", directory, e);
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        int tombstones = size - nodeById.size();
+        if (compactionRatio <= 0 || tombstones == 0 || tombstones < size * compactionRatio) {
+            return;
+        }
+        compact();
+    }
+
+    /**
+     * 用未删除的节点重建图和向量存储，回收已删除节点的槽位
+     * 指定目录时新的向量写入单独的文件，与新的图结构一起保存后再替换原文件；
+     * 两个文件头中的代数不一致时（替换到一半时进程退出），加载时忽略已有数据
+     */
+    private void compact() throws IOException {
+        VectorStorage previous = storage;
+        String[] previousIds = ids;
+        TextSegment[] previousSegments = segments;
+        BitSet previousDeleted = (BitSet) deleted.clone();
+        int previousSize = size;
+        int live = nodeById.size();
+
+        Path compactedFile = directory == null ? null : directory.resolve(VECTORS_FILE + ".compact");
+        if (compactedFile != null) {
+            Files.deleteIfExists(compactedFile);
+        }
+        storage = new VectorStorage(compactedFile, previous.dimension(), Math.max(1, live));
+        storage.generation(previous.generation() + 1);
+        int capacity = Math.max(16, live);
+        neighbors = new int[capacity][][];
+        ids = new String[capacity];
+        segments = new TextSegment[capacity];
+        size = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        deleted.clear();
+        nodeById.clear();
+        for (int node = 0; node < previousSize; node++) {
+            if (!previousDeleted.get(node)) {
+                insert(previousIds[node], previous.read(node), previousSegments[node]);
+            }
+        }
+        previous.close();
+        if (compactedFile != null) {
+            persist(compactedFile);
+            dirty = false;
+        }
+        logger.info("本地向量索引 {} 已压缩，回收已删除节点 {} 个，剩余 {} 个", directory, previousSize - live, live);
+    }
+
+    private void markDeleted(int node) {
+        deleted.set(node);
+        segments[node] = null;
+    }
+
+    private float[] prepare(float[] vector) {
+        if (!metric.normalizes()) {
+            return vector;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(required, ids.length * 2);
+        neighbors = java.util.Arrays.copyOf(neighbors, newLength);
+        ids = java.util.Arrays.copyOf(ids, newLength);
+        segments = java.util.Arrays.copyOf(segments, newLength);
+    }
+
+    /**
+     * 保存图结构和文本片段，先写临时文件再替换，避免写到一半时进程退出导致文件损坏
+     *
+     * @param compactedVectors 压缩后新写入的向量文件，不为null时在替换图结构之前替换原向量文件
+     */
+    private void persist(Path compactedVectors) {
+        if (directory == null || storage == null) {
+            return;
+        }
+        storage.force();
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        Path tempFile = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(GRAPH_MAGIC);
+            out.writeInt(GRAPH_VERSION);
+            out.writeUTF(metric.name());
+            out.writeInt(storage.dimension());
+            out.writeLong(storage.generation());
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < size; node++) {
+                boolean isDeleted = deleted.get(node);
+                out.writeBoolean(isDeleted);
+                writeString(out, ids[node]);
+                out.writeInt(neighbors[node].length);
+                for (int[] links : neighbors[node]) {
+                    out.writeInt(links[0]);
+                    for (int i = 1; i <= links[0]; i++) {
+                        out.writeInt(links[i]);
+                    }
+                }
+                TextSegment segment = isDeleted ? null : segments[node];
+                out.writeBoolean(segment != null);
+                if (segment != null) {
+                    writeString(out, segment.text());
+                    writeString(out, OBJECT_MAPPER.writeValueAsString(segment.metadata().toMap()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存本地向量索引失败", e);
+        }
+        try {
+            if (compactedVectors != null) {
+                Files.move(compactedVectors, directory.resolve(VECTORS_FILE),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(tempFile, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存本地向量索引失败", e);
+        }
+    }
+
+    /**
+     * 加载已保存的索引
+     *
+     * @return 是否加载了已有数据，文件不存在或被忽略时返回false
+     */
+    private boolean load() {
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        Path vectorsFile = directory.resolve(VECTORS_FILE);
+        if (!Files.exists(graphFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            int version = in.readInt() == GRAPH_MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != GRAPH_VERSION) {
+                logger.warn("本地向量索引文件格式不符，忽略已有数据: {}", graphFile);
+                return false;
+            }
+            String storedMetric = in.readUTF();
+            if (!metric.name().equals(storedMetric)) {
+                throw new IllegalStateException("本地向量索引使用的距离度量为 " + storedMetric + "，与配置的 " + metric + " 不一致");
+            }
+            int dimension = in.readInt();
+            // 版本1没有记录代数，对应的向量文件头中代数为0
+            long generation = version >= 2 ? in.readLong() : 0;
+            if (VectorStorage.readDimension(vectorsFile) != dimension
+                    || VectorStorage.readGeneration(vectorsFile) != generation) {
+                logger.warn("本地向量文件与索引文件不匹配，忽略已有数据: {}", vectorsFile);
+                return false;
+            }
+            int count = in.readInt();
+            entryPoint = in.readInt();
+            maxLevel = in.readInt();
+            ensureCapacity(count);
+            for (int node = 0; node < count; node++) {
+                boolean isDeleted = in.readBoolean();
+                ids[node] = readString(in);
+                int levels = in.readInt();
+                neighbors[node] = new int[levels][];
+                for (int level = 0; level < levels; level++) {
+                    int linkCount = in.readInt();
+                    int[] links = new int[maxConnections(level) + 1];
+                    links[0] = linkCount;
+                    for (int i = 1; i <= linkCount; i++) {
+                        links[i] = in.readInt();
+                    }
+                    neighbors[node][level] = links;
+                }
+                if (in.readBoolean()) {
+                    String text = readString(in);
+                    Map<String, Object> metadata = OBJECT_MAPPER.readValue(readString(in), new TypeReference<>() {
+                    });
+                    segments[node] = TextSegment.from(text, Metadata.from(metadata));
+                }
+                if (isDeleted) {
+                    deleted.set(node);
+                } else {
+                    nodeById.put(ids[node], node);
+                }
+            }
+            size = count;
+            storage = new VectorStorage(vectorsFile, dimension, count);
+            logger.info("已加载本地向量索引 {}，向量数量 {}", directory, nodeById.size());
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载本地向量索引失败", e);
+        }
+    }
+
+    /**
+     * 读取索引标识；没有加载已有数据时生成新的标识并保存，之前记录的片段都不再属于这个索引
+     */
+    private String loadStoreId(boolean loaded) {
+        Path idFile = directory.resolve(STORE_ID_FILE);
+        try {
+            if (loaded && Files.exists(idFile)) {
+                return Files.readString(idFile, StandardCharsets.UTF_8).trim();
+            }
+            String id = UUID.randomUUID().toString();
+            Files.createDirectories(directory);
+            Files.writeString(idFile, id, StandardCharsets.UTF_8);
+            return id;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取本地向量索引标识失败", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Candidate(int node, float distance) {
+    }
+}
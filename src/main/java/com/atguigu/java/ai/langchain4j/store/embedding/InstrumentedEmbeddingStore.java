@@ -0,0 +1,133 @@
+package com.atguigu.java.ai.langchain4j.store.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 记录检索耗时和命中质量的向量存储（装饰器）
+ * 只统计search：耗时、返回条数、每条结果的相似度得分和最高得分的分布，用来观察阈值是否合适以及检索质量的变化；
+ * 写入操作原样交给底层存储
+ */
+public class InstrumentedEmbeddingStore<Embedded> implements EmbeddingStore<Embedded> {
+
+    /**
+     * 相似度得分分布的桶边界
+     */
+    private static final double[] SCORE_BUCKETS = {0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9};
+
+    private final EmbeddingStore<Embedded> delegate;
+
+    private final Timer searchTimer;
+
+    private final DistributionSummary matchCount;
+
+    private final DistributionSummary matchScore;
+
+    private final DistributionSummary topScore;
+
+    /**
+     * @param delegate      实际的向量存储
+     * @param namespace     知识库命名空间，作为指标标签
+     * @param meterRegistry 指标注册
+     */
+    public InstrumentedEmbeddingStore(EmbeddingStore<Embedded> delegate, String namespace, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.searchTimer = Timer.builder("xiaozhi.rag.vector.latency")
+                .description("向量检索耗时")
+                .tag("namespace", namespace)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.matchCount = DistributionSummary.builder("xiaozhi.rag.vector.matches")
+                .description("每次向量检索返回的条数")
+                .tag("namespace", namespace)
+                .register(meterRegistry);
+        this.matchScore = DistributionSummary.builder("xiaozhi.rag.vector.score")
+                .description("向量检索结果的相似度得分")
+                .tag("namespace", namespace)
+                .serviceLevelObjectives(SCORE_BUCKETS)
+                .register(meterRegistry);
+        this.topScore = DistributionSummary.builder("xiaozhi.rag.vector.top.score")
+                .description("每次向量检索的最高相似度得分")
+                .tag("namespace", namespace)
+                .serviceLevelObjectives(SCORE_BUCKETS)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingSearchResult<Embedded> search(EmbeddingSearchRequest request) {
+        EmbeddingSearchResult<Embedded> result = searchTimer.record(() -> delegate.search(request));
+        List<EmbeddingMatch<Embedded>> matches = result.matches();
+        matchCount.record(matches.size());
+        double top = 0;
+        for (EmbeddingMatch<Embedded> match : matches) {
+            if (match.score() != null) {
+                matchScore.record(match.score());
+                top = Math.max(top, match.score());
+            }
+        }
+        if (!matches.isEmpty()) {
+            topScore.record(top);
+        }
+        return result;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return delegate.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, Embedded embedded) {
+        return delegate.add(embedding, embedded);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return delegate.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<Embedded> embedded) {
+        return delegate.addAll(embeddings, embedded);
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<Embedded> embedded) {
+        delegate.addAll(ids, embeddings, embedded);
+    }
+
+    @Override
+    public void remove(String id) {
+        delegate.remove(id);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        delegate.removeAll(ids);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        delegate.removeAll(filter);
+    }
+
+    @Override
+    public void removeAll() {
+        delegate.removeAll();
+    }
+}
@@ -0,0 +1,163 @@
+package com.atguigu.java.ai.langchain4j.store.embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 向量的堆外存储
+ * 所有向量连续保存在一块堆外内存中，按槽位编号定位；指定文件时使用内存映射文件，写入即持久化，
+ * 重启后直接映射已有文件，不需要重新读取和反序列化
+ */
+class VectorStorage implements AutoCloseable {
+
+    private static final int MAGIC = 0x48564543;
+
+    private static final int HEADER_BYTES = 16;
+
+    private final Path file;
+
+    private final int dimension;
+
+    private FileChannel channel;
+
+    private ByteBuffer buffer;
+
+    private FloatBuffer vectors;
+
+    private int capacity;
+
+    /**
+     * @param file      内存映射文件，为null时使用堆外内存，不持久化
+     * @param dimension 向量维度
+     * @param capacity  初始槽位数量
+     */
+    VectorStorage(Path file, int dimension, int capacity) throws IOException {
+        this.file = file;
+        this.dimension = dimension;
+        if (file != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() >= HEADER_BYTES) {
+                // 已有文件时按文件大小确定容量
+                capacity = Math.max(capacity, (int) ((channel.size() - HEADER_BYTES) / ((long) dimension * Float.BYTES)));
+            }
+        }
+        map(Math.max(1, capacity));
+        if (file != null) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, dimension);
+        }
+    }
+
+    /**
+     * 读取已有文件中记录的向量维度
+     *
+     * @return 维度；文件不存在或格式不符时返回-1
+     */
+    static int readDimension(Path file) throws IOException {
+        if (file == null || !Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+            channel.read(header, 0);
+            return header.getInt(0) == MAGIC ? header.getInt(4) : -1;
+        }
+    }
+
+    /**
+     * 读取已有文件中记录的代数，与graph.bin中的代数一致时两个文件属于同一次写入
+     *
+     * @return 代数；文件不存在或格式不符时返回-1，旧文件没有记录代数时为0
+     */
+    static long readGeneration(Path file) throws IOException {
+        if (file == null || !Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            channel.read(header, 0);
+            return header.getInt(0) == MAGIC ? header.getLong(8) : -1;
+        }
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 代数保存在文件头的第8到16字节，压缩重建向量文件时递增；堆外内存没有文件头，始终为0
+     */
+    long generation() {
+        return file == null ? 0 : buffer.getLong(8);
+    }
+
+    void generation(long generation) {
+        if (file != null) {
+            buffer.putLong(8, generation);
+        }
+    }
+
+    /**
+     * 所有向量的视图，第slot个向量从slot * dimension开始
+     */
+    FloatBuffer vectors() {
+        return vectors;
+    }
+
+    void write(int slot, float[] vector) throws IOException {
+        if (slot >= capacity) {
+            map(Math.max(slot + 1, capacity * 2));
+        }
+        vectors.put(slot * dimension, vector);
+    }
+
+    float[] read(int slot) {
+        float[] vector = new float[dimension];
+        vectors.get(slot * dimension, vector);
+        return vector;
+    }
+
+    /**
+     * 将内存映射文件的修改刷到磁盘
+     */
+    void force() {
+        if (buffer instanceof MappedByteBuffer mappedByteBuffer) {
+            mappedByteBuffer.force();
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        long bytes = (long) newCapacity * dimension * Float.BYTES;
+        if (channel != null) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bytes);
+            buffer = mapped.order(ByteOrder.nativeOrder());
+            vectors = buffer.slice(HEADER_BYTES, (int) bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        } else {
+            ByteBuffer allocated = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+            if (vectors != null) {
+                FloatBuffer previous = vectors.duplicate();
+                previous.clear();
+                allocated.asFloatBuffer().put(previous);
+            }
+            buffer = allocated;
+            vectors = allocated.asFloatBuffer();
+        }
+        capacity = newCapacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
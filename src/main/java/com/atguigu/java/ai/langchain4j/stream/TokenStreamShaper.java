@@ -0,0 +1,210 @@
+package com.atguigu.java.ai.langchain4j.stream;
+
+import com.atguigu.java.ai.langchain4j.config.StreamConfig;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式输出整形
+ * 模型每个token只有几个字节，逐个写出时每次写入和flush的开销远大于内容本身；这里把token按字节数或时间窗口合并成分片后再写出
+ * 分片只在客户端有需求（request）时写出，客户端读得慢时后续token继续合并进同一个分片，不会在内存中堆积大量小分片；
+ * 客户端断开（取消订阅）时立即取消上游的模型输出
+ */
+@Component
+public class TokenStreamShaper {
+
+    @Autowired
+    private StreamConfig streamConfig;
+
+    /**
+     * 按配置合并token，未开启时原样返回
+     */
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (!streamConfig.isCoalesceEnabled()) {
+            return tokens;
+        }
+        return coalesce(tokens, streamConfig.getMaxChunkBytes(), Duration.ofMillis(streamConfig.getMaxDelayMs()),
+                Schedulers.parallel());
+    }
+
+    /**
+     * 转换为SSE事件流：每个分片一个message事件（多行内容由框架拆成多个data行），空闲时发送注释行作为心跳，结束时发送done事件
+     * publish和merge的预取都为1，客户端读得慢时分片不会在中间队列里堆积，后续token继续合并进待写出的分片
+     */
+    public Flux<ServerSentEvent<String>> toServerSentEvents(Flux<String> tokens) {
+        Duration heartbeat = Duration.ofSeconds(streamConfig.getSseHeartbeatSeconds());
+        return coalesce(tokens).publish(chunks -> Flux.merge(1,
+                        chunks.map(chunk -> ServerSentEvent.builder(chunk).event("message").build()),
+                        // 心跳只是保活，客户端暂时读不过来时直接丢弃
+                        Flux.interval(heartbeat, heartbeat)
+                                .onBackpressureDrop()
+                                .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build())
+                                .takeUntilOther(chunks.then())), 1)
+                .concatWith(Mono.just(ServerSentEvent.builder("[DONE]").event("done").build()));
+    }
+
+    /**
+     * 合并token：累计达到maxChunkBytes字节，或分片中第一个token到达后经过maxDelay，且下游有需求时写出一个分片
+     */
+    public static Flux<String> coalesce(Flux<String> tokens, int maxChunkBytes, Duration maxDelay, Scheduler scheduler) {
+        return Flux.create(sink -> new Coalescer(sink, maxChunkBytes, maxDelay, scheduler).start(tokens));
+    }
+
+    /**
+     * 无界订阅上游（模型按自己的速度推送token，无法反压），token追加到当前分片，按下游需求写出
+     * 所有状态变更和写出都在同一把锁内完成，保证分片顺序
+     */
+    private static final class Coalescer extends BaseSubscriber<String> {
+
+        private final FluxSink<String> sink;
+
+        private final int maxChunkBytes;
+
+        private final Duration maxDelay;
+
+        private final Scheduler scheduler;
+
+        private final StringBuilder pending = new StringBuilder();
+
+        private int pendingBytes;
+
+        /**
+         * 当前分片已达到写出条件（字节数或时间），等待下游需求
+         */
+        private boolean due;
+
+        private Disposable timer;
+
+        private boolean upstreamDone;
+
+        private Throwable error;
+
+        private boolean terminated;
+
+        Coalescer(FluxSink<String> sink, int maxChunkBytes, Duration maxDelay, Scheduler scheduler) {
+            this.sink = sink;
+            this.maxChunkBytes = Math.max(1, maxChunkBytes);
+            this.maxDelay = maxDelay;
+            this.scheduler = scheduler;
+        }
+
+        void start(Flux<String> tokens) {
+            sink.onRequest(n -> drain());
+            // 客户端断开或下游取消时取消上游，不再继续接收模型输出
+            sink.onDispose(() -> {
+                dispose();
+                synchronized (this) {
+                    cancelTimer();
+                }
+            });
+            tokens.subscribe(this);
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected void hookOnNext(String token) {
+            synchronized (this) {
+                if (pending.length() == 0 && !due && timer == null) {
+                    timer = scheduler.schedule(this::onTimer, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+                }
+                pending.append(token);
+                pendingBytes += utf8Length(token);
+                if (pendingBytes >= maxChunkBytes) {
+                    due = true;
+                }
+                drain();
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                upstreamDone = true;
+                due = true;
+                drain();
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (this) {
+                upstreamDone = true;
+                error = throwable;
+                due = true;
+                drain();
+            }
+        }
+
+        private synchronized void onTimer() {
+            timer = null;
+            if (pending.length() > 0) {
+                due = true;
+            }
+            drain();
+        }
+
+        private synchronized void drain() {
+            if (terminated) {
+                return;
+            }
+            if (due && pending.length() > 0 && sink.requestedFromDownstream() > 0) {
+                String chunk = pending.toString();
+                pending.setLength(0);
+                pendingBytes = 0;
+                due = false;
+                cancelTimer();
+                sink.next(chunk);
+            }
+            if (upstreamDone && pending.length() == 0) {
+                terminated = true;
+                if (error != null) {
+                    sink.error(error);
+                } else {
+                    sink.complete();
+                }
+            }
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        private static int utf8Length(String token) {
+            int bytes = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    // 代理对合计4个字节
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+    }
+}
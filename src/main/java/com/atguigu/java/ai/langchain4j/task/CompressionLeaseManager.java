@@ -0,0 +1,83 @@
+package com.atguigu.java.ai.langchain4j.task;
+
+import com.atguigu.java.ai.langchain4j.bean.CompressionLease;
+import com.atguigu.java.ai.langchain4j.config.CompressionConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * 压缩任务分片租约管理
+ * 多个应用实例通过租约文档抢占分片，同一分片同一时间只由一个实例处理
+ */
+@Component
+public class CompressionLeaseManager {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CompressionConfig compressionConfig;
+
+    /**
+     * 当前实例的唯一标识
+     */
+    private final String owner = resolveHostName() + "-" + UUID.randomUUID();
+
+    /**
+     * 尝试获取（或续期）分片租约
+     *
+     * @param shard 分片编号
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire(int shard) {
+        Date now = new Date();
+        // 租约已过期，或者本来就由当前实例持有
+        Criteria criteria = Criteria.where("_id").is(leaseId(shard))
+                .orOperator(Criteria.where("expiresAt").lt(now), Criteria.where("owner").is(owner));
+        Update update = new Update();
+        update.set("owner", owner);
+        update.set("expiresAt", new Date(now.getTime() + compressionConfig.getLeaseSeconds() * 1000L));
+        try {
+            // 租约被其他实例持有时，upsert会因_id重复而失败
+            mongoTemplate.upsert(new Query(criteria), update, CompressionLease.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 释放分片租约
+     *
+     * @param shard 分片编号
+     */
+    public void release(int shard) {
+        Criteria criteria = Criteria.where("_id").is(leaseId(shard)).and("owner").is(owner);
+        mongoTemplate.remove(new Query(criteria), CompressionLease.class);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private String leaseId(int shard) {
+        return "chat-compression-" + shard + "/" + compressionConfig.getScanShards();
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown-host";
+        }
+    }
+}
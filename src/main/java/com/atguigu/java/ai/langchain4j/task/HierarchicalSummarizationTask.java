@@ -3,19 +3,31 @@ package com.atguigu.java.ai.langchain4j.task;
 import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
 import com.atguigu.java.ai.langchain4j.config.CompressionConfig;
 import com.atguigu.java.ai.langchain4j.store.HierarchicalSummarizationMemoryStore;
-import dev.langchain4j.data.message.ChatMessage;
-import dev.langchain4j.data.message.ChatMessageDeserializer;
-import dev.langchain4j.data.message.ChatMessageSerializer;
+import com.atguigu.java.ai.langchain4j.store.codec.ChatMessagesCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 @Component
 public class HierarchicalSummarizationTask {
@@ -27,10 +39,36 @@ public class HierarchicalSummarizationTask {
 
     @Autowired
     private HierarchicalSummarizationMemoryStore hierarchicalSummarizationMemoryStore;
-    
+
     @Autowired
     private CompressionConfig compressionConfig;
 
+    @Autowired
+    private CompressionLeaseManager leaseManager;
+
+    @Autowired
+    private ChatMessagesCodec chatMessagesCodec;
+
+    /**
+     * 并行处理每批聊天记录的线程池
+     */
+    private ExecutorService scanExecutor;
+
+    @PostConstruct
+    public void initScanExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        scanExecutor = Executors.newFixedThreadPool(Math.max(1, compressionConfig.getScanParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "compression-scan-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdownScanExecutor() {
+        scanExecutor.shutdownNow();
+    }
+
     /**
      * 定时任务：根据配置执行层级递归总结的记忆压缩
      * 对所有用户的聊天记录进行检查和压缩
@@ -46,63 +84,155 @@ public class HierarchicalSummarizationTask {
         logger.info("开始执行层级递归总结的记忆压缩任务，开始时间: {}", startTime);
 
         long startTimeMillis = System.currentTimeMillis();
-        int totalRecords = 0;
-        int compressedCount = 0;
-        int errorCount = 0;
+        AtomicInteger totalRecords = new AtomicInteger();
+        AtomicInteger compressedCount = new AtomicInteger();
+        AtomicInteger errorCount = new AtomicInteger();
 
         try {
-            // 查询所有聊天记录
-            List<ChatMessages> allChatMessages = mongoTemplate.findAll(ChatMessages.class);
-            totalRecords = allChatMessages.size();
-            
-            logger.info("查询到 {} 条聊天记录，开始进行压缩处理", totalRecords);
-            
-            for (ChatMessages chatMessage : allChatMessages) {
+            // 按memoryId取模划分分片，每个分片由抢到租约的实例处理
+            int shards = Math.max(1, compressionConfig.getScanShards());
+            for (int shard = 0; shard < shards; shard++) {
+                if (!leaseManager.tryAcquire(shard)) {
+                    logger.info("分片 {}/{} 正由其他实例处理，跳过", shard, shards);
+                    continue;
+                }
                 try {
-                    // 获取当前聊天记录的消息列表
-                    List<ChatMessage> messages = ChatMessageDeserializer.messagesFromJson(chatMessage.getContent());
-                    
-                    // 检查是否需要压缩（消息数量超过阈值）
-                    if (messages.size() > compressionConfig.getThreshold()) {
-                        if (compressionConfig.isVerboseLogging()) {
-                            logger.debug("用户 memoryId={} 的消息数量 {} 超过阈值 {}，开始压缩", 
-                                    chatMessage.getMemoryId(), messages.size(), compressionConfig.getThreshold());
-                        }
-                        
-                        // 执行层级递归总结压缩
-                        List<ChatMessage> compressedMessages = hierarchicalSummarizationMemoryStore.compressMessagesForTest(messages);
-                        
-                        // 更新聊天记录
-                        chatMessage.setContent(ChatMessageSerializer.messagesToJson(compressedMessages));
-                        mongoTemplate.save(chatMessage);
-                        compressedCount++;
-                        
-                        logger.info("用户 memoryId={} 的聊天记录已压缩，压缩前消息数量：{}，压缩后消息数量：{}", 
-                                chatMessage.getMemoryId(), messages.size(), compressedMessages.size());
-                    } else {
-                        if (compressionConfig.isVerboseLogging()) {
-                            logger.debug("用户 memoryId={} 的消息数量 {} 未超过阈值 {}，跳过压缩", 
-                                    chatMessage.getMemoryId(), messages.size(), compressionConfig.getThreshold());
-                        }
-                    }
-                } catch (Exception e) {
-                    errorCount++;
-                    logger.error("处理用户 memoryId={} 的聊天记录时出错: {}", 
-                            chatMessage.getMemoryId(), e.getMessage(), e);
+                    compressShard(shard, shards, totalRecords, compressedCount, errorCount);
+                } finally {
+                    leaseManager.release(shard);
                 }
             }
-            
+
             long endTimeMillis = System.currentTimeMillis();
             long duration = endTimeMillis - startTimeMillis;
             String endTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            
+
             logger.info("层级递归总结的记忆压缩任务执行完成，结束时间: {}，总耗时: {}ms", endTime, duration);
-            logger.info("处理统计 - 总记录数: {}，压缩记录数: {}，错误记录数: {}", 
-                    totalRecords, compressedCount, errorCount);
-                    
+            logger.info("处理统计 - 总记录数: {}，压缩记录数: {}，错误记录数: {}",
+                    totalRecords.get(), compressedCount.get(), errorCount.get());
+
         } catch (Exception e) {
             logger.error("执行层级递归总结的记忆压缩任务时出错: {}", e.getMessage(), e);
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 按_id分页读取一个分片内的聊天记录，按批并行压缩
+     * 每批是一次独立的查询，压缩期间不持有游标，总结耗时再长也不会因游标超时而中断；堆内同时只保留一批记录
+     * 每条记录写回前续期租约，租约被其他实例接管后不再写入，并停止处理该分片
+     */
+    private void compressShard(int shard, int shards, AtomicInteger totalRecords,
+                               AtomicInteger compressedCount, AtomicInteger errorCount) {
+        int batchSize = Math.max(1, compressionConfig.getScanBatchSize());
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        BooleanSupplier writeGuard = () -> {
+            if (!leaseLost.get() && !leaseManager.tryAcquire(shard)) {
+                leaseLost.set(true);
+            }
+            return !leaseLost.get();
+        };
+
+        logger.info("开始处理分片 {}/{}", shard, shards);
+        ObjectId lastId = null;
+        while (true) {
+            Query query = new Query(candidateCriteria());
+            if (shards > 1) {
+                query.addCriteria(Criteria.where("memoryId").mod(shards, shard));
+            }
+            if (lastId != null) {
+                query.addCriteria(Criteria.where("_id").gt(lastId));
+            }
+            query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+            List<ChatMessages> batch = mongoTemplate.find(query, ChatMessages.class);
+            if (batch.isEmpty()) {
+                return;
+            }
+            lastId = batch.get(batch.size() - 1).getMessageId();
+            compressBatch(batch, writeGuard, compressedCount, errorCount);
+            totalRecords.addAndGet(batch.size());
+            // 本批没有需要写回的记录时也续期一次；续期失败说明租约已过期并被其他实例接管
+            if (leaseLost.get() || !leaseManager.tryAcquire(shard)) {
+                logger.warn("分片 {}/{} 的租约已被其他实例接管，停止处理该分片", shard, shards);
+                return;
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 服务端预过滤条件：消息数量超过阈值，且从未压缩过或压缩后又有新的写入
+     * 缺少messageCount字段的旧文档也会被选中，处理时补齐该字段
+     */
+    private Criteria candidateCriteria() {
+        Criteria oversized = new Criteria().andOperator(
+                Criteria.where("messageCount").gt(compressionConfig.getThreshold()),
+                new Criteria().orOperator(
+                        Criteria.where("lastCompressedAt").exists(false),
+                        Criteria.expr(ComparisonOperators.valueOf("lastUpdatedAt").greaterThan("lastCompressedAt"))));
+        return new Criteria().orOperator(Criteria.where("messageCount").exists(false), oversized);
+    }
+
+    /**
+     * 并行压缩一批聊天记录，等待整批完成后再读取下一批
+     */
+    private void compressBatch(List<ChatMessages> batch, BooleanSupplier writeGuard,
+                               AtomicInteger compressedCount, AtomicInteger errorCount) {
+        CompletableFuture<?>[] futures = batch.stream()
+                .map(chatMessage -> CompletableFuture.runAsync(
+                        () -> compressChatMessages(chatMessage, writeGuard, compressedCount, errorCount), scanExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private void compressChatMessages(ChatMessages chatMessage, BooleanSupplier writeGuard,
+                                      AtomicInteger compressedCount, AtomicInteger errorCount) {
+        try {
+            // 优先使用冗余的消息数量，旧文档才需要反序列化计数
+            int messageCount = chatMessage.getMessageCount() != null
+                    ? chatMessage.getMessageCount()
+                    : chatMessagesCodec.read(chatMessage).size();
+
+            // 检查是否需要压缩（消息数量超过阈值）
+            if (messageCount > compressionConfig.getThreshold()) {
+                if (compressionConfig.isVerboseLogging()) {
+                    logger.debug("用户 memoryId={} 的消息数量 {} 超过阈值 {}，开始压缩",
+                            chatMessage.getMemoryId(), messageCount, compressionConfig.getThreshold());
+                }
+
+                // 执行层级递归总结压缩，并以读取时的版本号作为条件写回（兼容增量摘要模式）
+                int compressedSize = hierarchicalSummarizationMemoryStore.compactStoredMessages(chatMessage, writeGuard);
+                if (compressedSize < 0) {
+                    logger.info("用户 memoryId={} 的聊天记录在压缩期间有新的写入或租约已失效，跳过本次压缩", chatMessage.getMemoryId());
+                    return;
+                }
+                compressedCount.incrementAndGet();
+
+                logger.info("用户 memoryId={} 的聊天记录已压缩，压缩前消息数量：{}，压缩后消息数量：{}",
+                        chatMessage.getMemoryId(), messageCount, compressedSize);
+            } else {
+                if (chatMessage.getMessageCount() == null && writeGuard.getAsBoolean()) {
+                    backfillMessageCount(chatMessage, messageCount);
+                }
+                if (compressionConfig.isVerboseLogging()) {
+                    logger.debug("用户 memoryId={} 的消息数量 {} 未超过阈值 {}，跳过压缩",
+                            chatMessage.getMemoryId(), messageCount, compressionConfig.getThreshold());
+                }
+            }
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            logger.error("处理用户 memoryId={} 的聊天记录时出错: {}",
+                    chatMessage.getMemoryId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 为旧文档补齐messageCount字段，之后的扫描即可在服务端直接过滤掉
+     */
+    private void backfillMessageCount(ChatMessages chatMessage, int messageCount) {
+        Query query = new Query(Criteria.where("_id").is(chatMessage.getMessageId()).and("messageCount").exists(false));
+        mongoTemplate.updateFirst(query, new Update().set("messageCount", messageCount), ChatMessages.class);
+    }
+
+}
@@ -1,48 +1,49 @@
 package com.atguigu.java.ai.langchain4j.tools;
 
+import com.atguigu.java.ai.langchain4j.config.SearchConfig;
 import com.atguigu.java.ai.langchain4j.entity.SearchEvidence;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.atguigu.java.ai.langchain4j.search.RelevanceScorer;
+import com.atguigu.java.ai.langchain4j.search.SearchApiClient;
+import com.atguigu.java.ai.langchain4j.search.SearchResultCache;
+import com.atguigu.java.ai.langchain4j.search.SearchResultStreamParser;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class BaiduSearchTools {
     
-    @Value("${bing.search.api.key}")
-    private String apiKey;
+    @Autowired
+    private SearchApiClient searchApiClient;
     
-    @Value("${bing.search.api.url}")
-    private String apiUrl;
+    @Autowired
+    private SearchResultCache searchResultCache;
     
-    @Value("${bing.search.api.count}")
-    private int resultCount;
+    @Autowired
+    private SearchConfig searchConfig;
     
-    private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    @Autowired
+    private RelevanceScorer relevanceScorer;
     
-    public BaiduSearchTools() {
-        this.webClient = WebClient.builder()
-                .defaultHeader(HttpHeaders.USER_AGENT, "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                .build();
-        this.objectMapper = new ObjectMapper();
-    }
+    @Autowired
+    private ToolMetrics toolMetrics;
     
     @Tool(name = "搜索医疗信息", value = "使用Bing搜索API搜索最新的医疗信息、疾病症状、治疗方法、医院科室等相关信息，为分导诊提供更准确的信息支持")
     public List<SearchEvidence> searchMedicalInfo(@P(value = "搜索关键词，如疾病名称、症状、科室名称等") String query) {
         try {
             String searchQuery = query + " 医疗 医院 科室 症状 治疗";
-            String response = performSearch(searchQuery);
-            return parseSearchResultsToEvidence(response, query, "medical_website");
+            return searchEvidence(searchQuery, query, "medical_website");
         } catch (Exception e) {
+            toolMetrics.markFailure();
             return List.of();
         }
     }
@@ -51,9 +52,9 @@ public class BaiduSearchTools {
     public List<SearchEvidence> searchDepartmentInfo(@P(value = "科室名称") String departmentName) {
         try {
             String searchQuery = departmentName + " 科室 职责 常见疾病 医生";
-            String response = performSearch(searchQuery);
-            return parseSearchResultsToEvidence(response, departmentName, "department_info");
+            return searchEvidence(searchQuery, departmentName, "department_info");
         } catch (Exception e) {
+            toolMetrics.markFailure();
             return List.of();
         }
     }
@@ -62,111 +63,107 @@ public class BaiduSearchTools {
     public List<SearchEvidence> searchDiseaseSymptoms(@P(value = "疾病名称或症状描述") String diseaseOrSymptom) {
         try {
             String searchQuery = diseaseOrSymptom + " 症状 病因 诊断 治疗";
-            String response = performSearch(searchQuery);
-            return parseSearchResultsToEvidence(response, diseaseOrSymptom, "disease_info");
+            return searchEvidence(searchQuery, diseaseOrSymptom, "disease_info");
         } catch (Exception e) {
+            toolMetrics.markFailure();
             return List.of();
         }
     }
     
-    @Tool(name = "智能分导诊", value = "根据患者症状，调用搜索API获取医疗相关的网页摘要")
+    @Tool(name = "智能分导诊", value = "根据患者症状，同时搜索医疗信息、就诊科室和疾病症状，返回合并去重后的网页摘要")
     public String intelligentMedicalGuidance(@P("患者症状描述") String symptoms) {
         try {
-            // 直接搜索症状相关的医疗信息
-            String searchQuery = symptoms + " 医疗 医院 科室 症状 治疗 诊断";
-            String response = performSearch(searchQuery);
-            List<SearchEvidence> evidences = parseSearchResultsToEvidence(response, symptoms, "medical_website");
+            List<SearchEvidence> evidences;
+            if (searchConfig.isFanOutGuidance()) {
+                // 三类搜索并发执行，总耗时取决于最慢的一路而不是三路之和
+                Duration budget = Duration.ofMillis(searchConfig.getGuidanceBudgetMs());
+                evidences = fanOutGuidanceSearch(symptoms, budget).block(budget.plusSeconds(1));
+            } else {
+                // 直接搜索症状相关的医疗信息
+                String searchQuery = symptoms + " 医疗 医院 科室 症状 治疗 诊断";
+                evidences = searchEvidence(searchQuery, symptoms, "medical_website");
+            }
             
             // 将 SearchEvidence 列表转换为格式化的字符串
             return formatSearchEvidenceAsString(evidences, symptoms);
         } catch (Exception e) {
+            toolMetrics.markFailure();
             return "搜索医疗信息时发生错误：" + e.getMessage();
         }
     }
     
+    /**
+     * 并发搜索医疗信息、就诊科室和疾病症状，合并后按URL去重并重新排序
+     * 每一路在时间预算内未返回或失败时按空结果处理，不影响其他路的结果
+     */
+    public Mono<List<SearchEvidence>> fanOutGuidanceSearch(String symptoms, Duration budget) {
+        Mono<List<SearchEvidence>> medical = searchWithinBudget(
+                symptoms + " 医疗 医院 科室 症状 治疗 诊断", symptoms, "medical_website", budget);
+        Mono<List<SearchEvidence>> department = searchWithinBudget(
+                symptoms + " 挂什么科 就诊科室", symptoms, "department_info", budget);
+        Mono<List<SearchEvidence>> disease = searchWithinBudget(
+                symptoms + " 症状 病因 诊断 治疗", symptoms, "disease_info", budget);
+        return Mono.zip(medical, department, disease)
+                .map(results -> mergeEvidences(List.of(results.getT1(), results.getT2(), results.getT3())));
+    }
     
-    // 通用搜索方法
-    private String performSearch(String searchQuery) {
-        return webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path(apiUrl)
-                        .queryParam("q", searchQuery)
-                        .queryParam("count", resultCount)
-                        .queryParam("mkt", "zh-CN")
-                        .queryParam("safesearch", "Moderate")
-                        .build())
-                .header("Ocp-Apim-Subscription-Key", apiKey)
-                .accept(MediaType.APPLICATION_JSON)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+    private Mono<List<SearchEvidence>> searchWithinBudget(String searchQuery, String originalQuery, String sourceType,
+                                                          Duration budget) {
+        return searchEvidenceAsync(searchQuery, originalQuery, sourceType)
+                .timeout(budget)
+                .onErrorResume(e -> Mono.just(List.of()));
     }
     
     /**
-     * 将搜索结果解析为SearchEvidence列表
+     * 合并多路搜索结果：同一URL只保留得分最高的一条，按相关性得分从高到低取前若干条
      */
-    private List<SearchEvidence> parseSearchResultsToEvidence(String response, String originalQuery, String sourceType) {
-        List<SearchEvidence> evidenceList = new ArrayList<>();
-        
-        try {
-            JsonNode rootNode = objectMapper.readTree(response);
-            JsonNode webPages = rootNode.path("webPages").path("value");
-            
-            if (!webPages.isArray() || webPages.size() == 0) {
-                return evidenceList;
-            }
-            
-            for (int i = 0; i < Math.min(webPages.size(), 5); i++) {
-                JsonNode page = webPages.get(i);
-                String title = page.path("name").asText();
-                String snippet = page.path("snippet").asText();
-                String url = page.path("url").asText();
-                
-                // 计算相关性得分（简单实现）
-                double relevanceScore = calculateRelevanceScore(title, snippet, originalQuery);
-                
-                SearchEvidence evidence = new SearchEvidence(
-                    title, 
-                    snippet, 
-                    url, 
-                    relevanceScore, 
-                    sourceType, 
-                    originalQuery
-                );
-                
-                evidenceList.add(evidence);
+    private List<SearchEvidence> mergeEvidences(List<List<SearchEvidence>> evidenceLists) {
+        Map<String, SearchEvidence> byUrl = new LinkedHashMap<>();
+        for (List<SearchEvidence> evidences : evidenceLists) {
+            for (SearchEvidence evidence : evidences) {
+                String key = evidence.getUrl() == null || evidence.getUrl().isEmpty() ? evidence.getTitle() : evidence.getUrl();
+                byUrl.merge(key, evidence, (existing, candidate) ->
+                        score(candidate) > score(existing) ? candidate : existing);
             }
-            
-        } catch (Exception ignored) {
-            // 解析失败时返回空列表
         }
-        
-        return evidenceList;
+        List<SearchEvidence> merged = new ArrayList<>(byUrl.values());
+        merged.sort(Comparator.comparingDouble(BaiduSearchTools::score).reversed());
+        return merged.size() > searchConfig.getGuidanceMaxEvidence()
+                ? new ArrayList<>(merged.subList(0, searchConfig.getGuidanceMaxEvidence()))
+                : merged;
+    }
+    
+    private static double score(SearchEvidence evidence) {
+        return evidence.getRelevanceScore() == null ? 0.0 : evidence.getRelevanceScore();
+    }
+    
+    
+    // 通用搜索方法
+    // 工具方法需要同步返回结果，只在这里等待非阻塞调用完成，等待时间不超过单次调用的超时时间
+    private List<SearchEvidence> searchEvidence(String searchQuery, String originalQuery, String sourceType) {
+        List<SearchEvidence> evidences = searchEvidenceAsync(searchQuery, originalQuery, sourceType)
+                .block(searchApiClient.callTimeout());
+        return evidences == null ? List.of() : evidences;
     }
     
     /**
-     * 计算搜索结果的相关性得分
+     * 非阻塞搜索并解析为SearchEvidence列表，优先读取缓存，相同的并发查询只请求一次搜索API
      */
-    private double calculateRelevanceScore(String title, String snippet, String query) {
-        String combinedText = (title + " " + snippet).toLowerCase();
-        String lowerQuery = query.toLowerCase();
-        
-        double score = 0.0;
-        
-        // 标题匹配权重更高
-        if (combinedText.contains(lowerQuery)) {
-            score += 0.5;
-        }
-        
-        // 关键词匹配
-        String[] queryWords = lowerQuery.split("\\s+");
-        for (String word : queryWords) {
-            if (word.length() > 1 && combinedText.contains(word)) {
-                score += 0.1;
-            }
-        }
-        
-        return Math.min(score, 1.0); // 最高得分为1.0
+    public Mono<List<SearchEvidence>> searchEvidenceAsync(String searchQuery, String originalQuery, String sourceType) {
+        return searchResultCache.get(searchQuery, sourceType, () -> {
+            // 查询词只切分一次，对每条结果打分时复用
+            RelevanceScorer.PreparedQuery preparedQuery = relevanceScorer.prepare(originalQuery);
+            return SearchResultStreamParser.parse(
+                    searchApiClient.search(searchQuery),
+                    searchApiClient.getResultCount(),
+                    (title, snippet, url) -> new SearchEvidence(
+                            title,
+                            snippet,
+                            url,
+                            relevanceScorer.score(preparedQuery, title, snippet),
+                            sourceType,
+                            originalQuery));
+        });
     }
     
     /**
@@ -0,0 +1,57 @@
+package com.atguigu.java.ai.langchain4j.tools;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具方法的耗时统计
+ * 按工具名称和结果（success/error）记录每次调用的耗时，耗时由ToolTimingChatMemory根据工具结果写入记忆的时间计算；
+ * 工具方法自己捕获异常并返回兜底结果时，调用markFailure()把本次调用记为error
+ */
+@Component
+public class ToolMetrics {
+
+    /**
+     * 当前线程正在执行的工具调用是否失败，工具方法和工具结果写入记忆在同一线程中依次执行
+     */
+    private static final ThreadLocal<Boolean> FAILED = new ThreadLocal<>();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 记录一次工具调用，并清除当前线程的失败标记
+     *
+     * @param tool  工具名称
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(String tool, long nanos) {
+        String outcome = Boolean.TRUE.equals(FAILED.get()) ? "error" : "success";
+        FAILED.remove();
+        Timer.builder("xiaozhi.tool.latency")
+                .description("工具调用耗时")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 把当前线程正在执行的工具调用记为失败
+     */
+    public void markFailure() {
+        FAILED.set(Boolean.TRUE);
+    }
+
+    /**
+     * 清除当前线程的失败标记，开始执行新一轮工具调用前调用
+     */
+    public void reset() {
+        FAILED.remove();
+    }
+}
@@ -0,0 +1,64 @@
+package com.atguigu.java.ai.langchain4j.tools;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.memory.ChatMemory;
+
+import java.util.List;
+
+/**
+ * 记录工具调用耗时的聊天记忆（装饰器）
+ * 智能体收到要求调用工具的AI消息后先写入记忆，再依次执行每个工具，每个工具执行完立即把结果写入记忆，
+ * 因此两次写入之间的时间就是一个工具的执行耗时；工具方法和@AiService的tools配置都不需要改动
+ */
+public class ToolTimingChatMemory implements ChatMemory {
+
+    private final ChatMemory delegate;
+
+    private final ToolMetrics toolMetrics;
+
+    /**
+     * 当前工具开始执行的时间，没有等待结果的工具调用时为0
+     */
+    private volatile long toolStart;
+
+    public ToolTimingChatMemory(ChatMemory delegate, ToolMetrics toolMetrics) {
+        this.delegate = delegate;
+        this.toolMetrics = toolMetrics;
+    }
+
+    @Override
+    public Object id() {
+        return delegate.id();
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        long start = toolStart;
+        if (message instanceof ToolExecutionResultMessage result && start != 0) {
+            toolMetrics.record(result.toolName(), System.nanoTime() - start);
+        }
+        delegate.add(message);
+        // 开始计时放在写入之后，耗时不包含记忆存储的写入
+        if (message instanceof ToolExecutionResultMessage) {
+            toolStart = start == 0 ? 0 : System.nanoTime();
+        } else if (message instanceof AiMessage aiMessage && aiMessage.hasToolExecutionRequests()) {
+            toolMetrics.reset();
+            toolStart = System.nanoTime();
+        } else {
+            toolStart = 0;
+        }
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        return delegate.messages();
+    }
+
+    @Override
+    public void clear() {
+        toolStart = 0;
+        delegate.clear();
+    }
+}
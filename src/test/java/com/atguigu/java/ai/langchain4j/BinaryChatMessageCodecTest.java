@@ -0,0 +1,67 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.store.codec.BinaryChatMessageCodec;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 二进制聊天记录编码测试
+ */
+public class BinaryChatMessageCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        List<ChatMessage> messages = createTestMessages();
+        BinaryChatMessageCodec codec = new BinaryChatMessageCodec(false, 0);
+
+        byte[] bytes = codec.encode(messages);
+
+        assertEquals(BinaryChatMessageCodec.VERSION_1, bytes[0]);
+        assertEquals(messages, codec.decode(bytes));
+    }
+
+    @Test
+    void testRoundTripWithCompression() {
+        List<ChatMessage> messages = createTestMessages();
+        BinaryChatMessageCodec plainCodec = new BinaryChatMessageCodec(false, 0);
+        BinaryChatMessageCodec compressedCodec = new BinaryChatMessageCodec(true, 0);
+
+        byte[] compressed = compressedCodec.encode(messages);
+
+        // 压缩标志位已设置，且不压缩的编解码器也能读取
+        assertEquals(1, compressed[1]);
+        assertEquals(messages, plainCodec.decode(compressed));
+    }
+
+    @Test
+    void testRejectUnknownVersion() {
+        BinaryChatMessageCodec codec = new BinaryChatMessageCodec(false, 0);
+        assertThrows(IllegalStateException.class, () -> codec.decode(new byte[]{9, 0, 0, 0, 0, 0}));
+    }
+
+    private List<ChatMessage> createTestMessages() {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from("你是一位专业的医疗AI助手"));
+        messages.add(UserMessage.from("我最近头痛，还伴有发热症状"));
+        messages.add(UserMessage.from("张三", "我想预约神经内科的医生"));
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("call_1")
+                .name("查询是否有号源")
+                .arguments("{\"name\":\"神经内科\",\"date\":\"2025-05-01\",\"time\":\"上午\"}")
+                .build();
+        messages.add(AiMessage.from(List.of(request)));
+        messages.add(ToolExecutionResultMessage.from("call_1", "查询是否有号源", "true"));
+        messages.add(AiMessage.from("神经内科5月1日上午有号源，请确认预约信息。"));
+        return messages;
+    }
+}
@@ -0,0 +1,85 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.store.embedding.CachingEmbeddingModel;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量缓存测试
+ */
+public class CachingEmbeddingModelTest {
+
+    /**
+     * 记录每次调用的文本，向量为文本长度和首字符
+     */
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+
+        private final List<List<String>> calls = new ArrayList<>();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            List<String> texts = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : textSegments) {
+                texts.add(segment.text());
+                embeddings.add(Embedding.from(new float[]{segment.text().length(), segment.text().charAt(0)}));
+            }
+            calls.add(texts);
+            return Response.from(embeddings);
+        }
+    }
+
+    private final CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+
+    private final CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "text-embedding-v3", 100, 2,
+            null, Duration.ofDays(1), new SimpleMeterRegistry());
+
+    @Test
+    void testRepeatedQueryHitsCache() {
+        Embedding first = model.embed("医院地址在哪里").content();
+        Embedding second = model.embed("医院地址在哪里").content();
+
+        assertEquals(1, delegate.calls.size());
+        assertArrayEquals(first.vector(), second.vector());
+    }
+
+    @Test
+    void testEmbedAllOnlySendsMissingTextsInBatches() {
+        model.embed("神经内科");
+
+        List<TextSegment> segments = List.of(
+                TextSegment.from("神经内科"),
+                TextSegment.from("挂号流程"),
+                TextSegment.from("挂号流程"),
+                TextSegment.from("门诊时间"),
+                TextSegment.from("停车"));
+        List<Embedding> embeddings = model.embedAll(segments).content();
+
+        // 第一次单独调用，之后三条未命中且去重的文本按每批2条发送
+        assertEquals(List.of(List.of("神经内科"), List.of("挂号流程", "门诊时间"), List.of("停车")), delegate.calls);
+        assertEquals(5, embeddings.size());
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(segments.get(i).text().length(), embeddings.get(i).vector()[0]);
+        }
+    }
+
+    @Test
+    void testModelNameIsPartOfKey() {
+        CachingEmbeddingModel other = new CachingEmbeddingModel(delegate, "text-embedding-v2", 100, 2,
+                null, Duration.ofDays(1), new SimpleMeterRegistry());
+        model.embed("科室信息");
+        other.embed("科室信息");
+
+        assertEquals(2, delegate.calls.size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.store.ChatMessagesMerger;
+import com.atguigu.java.ai.langchain4j.store.MessageSequences;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 并发写入合并测试
+ */
+public class ChatMessagesMergerTest {
+
+    @Test
+    void testConcurrentTurnWithRepeatedTextIsKept() {
+        MessageSequences sequences = new MessageSequences();
+        List<ChatMessage> stored = List.of(UserMessage.from("好的"), AiMessage.from("收到"));
+        sequences.register(stored, List.of(0L, 1L));
+
+        // 请求A读取后，请求B先写入了一轮内容相同的短消息
+        List<ChatMessage> fromB = List.of(UserMessage.from("好的"), AiMessage.from("好的"));
+        List<ChatMessage> current = new ArrayList<>(stored);
+        current.addAll(fromB);
+        List<Long> currentSeqs = List.of(0L, 1L, 2L, 3L);
+
+        List<ChatMessage> fromA = new ArrayList<>(stored);
+        fromA.add(UserMessage.from("好的"));
+        fromA.add(AiMessage.from("谢谢"));
+
+        ChatMessagesMerger.Result result = ChatMessagesMerger.reconcile(current, currentSeqs, 4, fromA, sequences::seqOf);
+
+        assertTrue(result.merged());
+        assertEquals(List.of(UserMessage.from("好的"), AiMessage.from("收到"),
+                UserMessage.from("好的"), AiMessage.from("好的"),
+                UserMessage.from("好的"), AiMessage.from("谢谢")), result.messages());
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), result.seqs());
+        assertEquals(6, result.nextSeq());
+    }
+
+    @Test
+    void testNoConcurrentWriteKeepsCallerList() {
+        MessageSequences sequences = new MessageSequences();
+        List<ChatMessage> stored = List.of(SystemMessage.from("你是小智"), UserMessage.from("谢谢"), AiMessage.from("不客气"));
+        sequences.register(stored, List.of(0L, 1L, 2L));
+
+        // 窗口移出了最早的一轮，又新增了内容重复的一轮
+        List<ChatMessage> incoming = List.of(stored.get(0), stored.get(2), UserMessage.from("谢谢"), AiMessage.from("不客气"));
+
+        ChatMessagesMerger.Result result = ChatMessagesMerger.reconcile(stored, List.of(0L, 1L, 2L), 3, incoming, sequences::seqOf);
+
+        assertFalse(result.merged());
+        assertSame(incoming, result.messages());
+        assertEquals(List.of(0L, 2L, 3L, 4L), result.seqs());
+        assertEquals(5, result.nextSeq());
+    }
+
+    @Test
+    void testSummaryTakesSequenceOfReplacedMessages() {
+        List<ChatMessage> before = List.of(UserMessage.from("头痛"), AiMessage.from("建议神经内科"),
+                UserMessage.from("好的"), AiMessage.from("好的"));
+        List<ChatMessage> after = List.of(AiMessage.from("摘要：头痛，建议神经内科"), before.get(2), before.get(3));
+
+        List<Long> seqs = MessageSequences.rewrittenSeqs(before, List.of(5L, 6L, 7L, 8L), after);
+
+        assertEquals(List.of(6L, 7L, 8L), seqs);
+    }
+}
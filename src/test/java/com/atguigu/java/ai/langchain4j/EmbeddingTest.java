@@ -1,36 +1,25 @@
 package com.atguigu.java.ai.langchain4j;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeBaseIngestionService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
-import java.util.Arrays;
-import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
 @SpringBootTest
 public class EmbeddingTest {
     @Autowired
-    private EmbeddingStore embeddingStore;
-    @Autowired
-    private EmbeddingModel embeddingModel;
+    private KnowledgeBaseIngestionService knowledgeBaseIngestionService;
     @Test
     public void testUploadKnowledgeLibrary() {
-        //使用FileSystemDocumentLoader读取指定目录下的知识库文档
-        //并使用默认的文档解析器对文档进行解析
-        Document document1 = FileSystemDocumentLoader.loadDocument("D:/IdeaProjects/java-ai-langchain4j/knowledge/knowledge/医院信息.md");
-        Document document2 = FileSystemDocumentLoader.loadDocument("D:/IdeaProjects/java-ai-langchain4j/knowledge/knowledge/科室信息.md");
-        Document document3 = FileSystemDocumentLoader.loadDocument("D:/IdeaProjects/java-ai-langchain4j/knowledge/knowledge/神经内科.md");
-        List<Document> documents = Arrays.asList(document1, document2, document3);
-        //文本向量化并存入向量数据库：将每个片段进行向量化，得到一个嵌入向量
-        EmbeddingStoreIngestor
-                .builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
-                .build()
-                .ingest(documents);
+        //扫描knowledge.base.path目录下的知识库文档，只对有变化的片段进行向量化并存入向量数据库
+        KnowledgeBaseIngestionService.IngestionReport report = knowledgeBaseIngestionService.ingest();
+        assertEquals(0, report.failedFiles());
+        assertTrue(report.scannedFiles() > 0);
+        //再次导入时所有文件都没有变化，不会重新计算向量
+        KnowledgeBaseIngestionService.IngestionReport again = knowledgeBaseIngestionService.ingest();
+        assertEquals(0, again.changedFiles());
+        assertEquals(0, again.addedSegments());
     }
 }
@@ -0,0 +1,160 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.rag.FanOutContentRetriever;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多知识源并行检索测试
+ * 慢知识源由闩锁挂起，不依赖睡眠和耗时判断
+ */
+public class FanOutContentRetrieverTest {
+
+    /**
+     * 挂起的知识源在此等待，测试结束时放行
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseSources() {
+        release.countDown();
+    }
+
+    private static List<Content> contents(String... texts) {
+        return List.of(texts).stream().map(Content::from).toList();
+    }
+
+    /**
+     * 挂起直到测试放行，被中断时记录并返回
+     */
+    private ContentRetriever stalled(CountDownLatch interrupted) {
+        return query -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return contents("历史归档资料");
+        };
+    }
+
+    @Test
+    void testSourcesRunInParallelAndMerge() {
+        // 每个知识源都要等另一个也开始执行才返回，串行执行时只能等到超时
+        CountDownLatch started = new CountDownLatch(2);
+        ContentRetriever hospital = query -> {
+            started.countDown();
+            assertTrue(await(started));
+            return contents("医院地址：北京市昌平区", "门诊时间：周一至周日");
+        };
+        ContentRetriever neurology = query -> {
+            started.countDown();
+            assertTrue(await(started));
+            return contents("神经内科主任医师张建国", "医院地址：北京市昌平区");
+        };
+        Map<String, ContentRetriever> sources = new LinkedHashMap<>();
+        sources.put("hospital", hospital);
+        sources.put("neurology", neurology);
+        try (FanOutContentRetriever retriever = new FanOutContentRetriever(
+                sources, question -> List.of("hospital", "neurology"), 10000, 3, 60, 4, 16, 4)) {
+            List<Content> contents = retriever.retrieve(Query.from("神经内科在哪里"));
+
+            assertEquals(3, contents.size());
+            // 两个知识源都排在第一位附近的片段融合得分最高，且只出现一次
+            assertEquals("医院地址：北京市昌平区", contents.get(0).textSegment().text());
+        }
+    }
+
+    @Test
+    void testSlowSourceIsDroppedAndInterrupted() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Map<String, ContentRetriever> sources = new LinkedHashMap<>();
+        sources.put("default", query -> contents("口腔科周末照常开诊"));
+        sources.put("archive", stalled(interrupted));
+        sources.put("broken", query -> {
+            throw new IllegalStateException("store unavailable");
+        });
+        try (FanOutContentRetriever retriever = new FanOutContentRetriever(
+                sources, question -> List.copyOf(sources.keySet()), 200, 3, 60, 4, 16, 4)) {
+            List<Content> contents = retriever.retrieve(Query.from("口腔科周末开门吗"));
+
+            assertEquals(1, contents.size());
+            assertEquals("口腔科周末照常开诊", contents.get(0).textSegment().text());
+            // 超过预算的检索被中断，检索线程不会一直被占用
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSingleSourceRunsOnCallerWithoutBudget() {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        Map<String, ContentRetriever> sources = new LinkedHashMap<>();
+        sources.put("default", query -> {
+            thread.set(Thread.currentThread());
+            return contents("挂号流程：线上预约后到窗口取号");
+        });
+        sources.put("archive", stalled(new CountDownLatch(1)));
+        try (FanOutContentRetriever retriever = new FanOutContentRetriever(
+                sources, question -> List.of("default"), 0, 3, 60, 4, 16, 4)) {
+            List<Content> contents = retriever.retrieve(Query.from("怎么挂号"));
+
+            // 预算为0也能拿到结果：单个知识源不经过检索线程，也不受预算限制
+            assertEquals(1, contents.size());
+            assertSame(Thread.currentThread(), thread.get());
+        }
+    }
+
+    @Test
+    void testBulkheadSkipsSaturatedSource() {
+        AtomicInteger archiveCalls = new AtomicInteger();
+        Map<String, ContentRetriever> sources = new LinkedHashMap<>();
+        sources.put("default", query -> contents("口腔科周末照常开诊"));
+        sources.put("archive", query -> {
+            archiveCalls.incrementAndGet();
+            // 不响应中断的慢知识源，超时取消后仍占用检索线程
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return contents("历史归档资料");
+        });
+        try (FanOutContentRetriever retriever = new FanOutContentRetriever(
+                sources, question -> List.copyOf(sources.keySet()), 500, 3, 60, 4, 16, 1)) {
+            assertEquals(1, retriever.retrieve(Query.from("口腔科周末开门吗")).size());
+            // 第一次检索的archive仍在执行，占满了该知识源的并发上限，第二次直接跳过
+            assertEquals(1, retriever.retrieve(Query.from("口腔科周末开门吗")).size());
+
+            assertEquals(1, archiveCalls.get());
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.bean.ChatMessages;
+import com.atguigu.java.ai.langchain4j.config.CompressionConfig;
+import com.atguigu.java.ai.langchain4j.store.HierarchicalSummarizationMemoryStore;
+import com.atguigu.java.ai.langchain4j.task.CompressionLeaseManager;
+import com.atguigu.java.ai.langchain4j.task.HierarchicalSummarizationTask;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 定时压缩任务测试：按_id分页读取，租约被接管后不再写回
+ * MongoDB、租约和压缩逻辑都由模拟对象代替
+ */
+public class HierarchicalSummarizationTaskTest {
+
+    private final CompressionConfig compressionConfig = new CompressionConfig();
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final CompressionLeaseManager leaseManager = mock(CompressionLeaseManager.class);
+
+    private final HierarchicalSummarizationMemoryStore memoryStore = mock(HierarchicalSummarizationMemoryStore.class);
+
+    private final HierarchicalSummarizationTask task = new HierarchicalSummarizationTask();
+
+    /**
+     * 实际写回的记录数量
+     */
+    private final AtomicInteger written = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        compressionConfig.setThreshold(5);
+        compressionConfig.setScanBatchSize(2);
+        compressionConfig.setScanParallelism(1);
+        when(memoryStore.compactStoredMessages(any(ChatMessages.class), any(BooleanSupplier.class))).thenAnswer(invocation -> {
+            if (!invocation.<BooleanSupplier>getArgument(1).getAsBoolean()) {
+                return -1;
+            }
+            written.incrementAndGet();
+            return 3;
+        });
+        ReflectionTestUtils.setField(task, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(task, "hierarchicalSummarizationMemoryStore", memoryStore);
+        ReflectionTestUtils.setField(task, "compressionConfig", compressionConfig);
+        ReflectionTestUtils.setField(task, "leaseManager", leaseManager);
+        task.initScanExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        task.shutdownScanExecutor();
+    }
+
+    @Test
+    void testPagesByIdWithoutHoldingCursor() {
+        List<ChatMessages> records = records(5);
+        List<Query> queries = new ArrayList<>();
+        when(leaseManager.tryAcquire(anyInt())).thenReturn(true);
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessages.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            queries.add(query);
+            Document idCriteria = (Document) query.getQueryObject().get("_id");
+            ObjectId after = idCriteria == null ? null : (ObjectId) idCriteria.get("$gt");
+            return records.stream()
+                    .filter(record -> after == null || record.getMessageId().compareTo(after) > 0)
+                    .limit(query.getLimit())
+                    .toList();
+        });
+
+        task.compressAllChatMemories();
+
+        assertEquals(5, written.get());
+        // 2 + 2 + 1，最后一页不满时不再查询
+        assertEquals(3, queries.size());
+        assertNull(queries.get(0).getQueryObject().get("_id"));
+        assertEquals(records.get(1).getMessageId(), ((Document) queries.get(1).getQueryObject().get("_id")).get("$gt"));
+        verify(mongoTemplate, never()).stream(any(Query.class), eq(ChatMessages.class));
+    }
+
+    @Test
+    void testStopsWritingAfterLeaseIsLost() {
+        List<ChatMessages> records = records(4);
+        // 抢到分片、第一条记录写回前续期成功，之后租约被其他实例接管
+        when(leaseManager.tryAcquire(0)).thenReturn(true, true, false);
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessages.class)))
+                .thenReturn(records.subList(0, 2), records.subList(2, 4));
+
+        task.compressAllChatMemories();
+
+        assertEquals(1, written.get());
+        // 租约失效后不再读取下一批
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(ChatMessages.class));
+        verify(leaseManager).release(0);
+    }
+
+    private static List<ChatMessages> records(int count) {
+        List<ChatMessages> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ChatMessages record = new ChatMessages();
+            record.setMessageId(new ObjectId());
+            record.setMemoryId(i + 1);
+            record.setMessageCount(10);
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,220 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地HNSW向量索引测试
+ */
+public class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+
+    @Test
+    void testRecallAgainstBruteForce() throws Exception {
+        Random random = new Random(7);
+        List<float[]> vectors = new ArrayList<>();
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 16, 100, 64)) {
+            List<String> ids = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random);
+                vectors.add(vector);
+                ids.add(String.valueOf(i));
+                embeddings.add(Embedding.from(vector));
+            }
+            store.addAll(ids, embeddings, null);
+
+            int hits = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                float[] query = randomVector(random);
+                Set<String> expected = IntStream.range(0, vectors.size()).boxed()
+                        .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors.get(i))))
+                        .limit(10)
+                        .map(String::valueOf)
+                        .collect(Collectors.toSet());
+                List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(query))
+                        .maxResults(10)
+                        .build()).matches();
+                for (EmbeddingMatch<TextSegment> match : matches) {
+                    if (expected.contains(match.embeddingId())) {
+                        hits++;
+                    }
+                }
+            }
+            // 召回率应在90%以上
+            assertTrue(hits >= queries * 10 * 0.9, "recall too low: " + hits);
+        }
+    }
+
+    @Test
+    void testRemoveAndFilter() throws Exception {
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 8, 50, 32)) {
+            String fever = store.add(Embedding.from(new float[]{1, 0, 0}),
+                    TextSegment.from("发热", Metadata.from("department", "内科")));
+            String fracture = store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}),
+                    TextSegment.from("骨折", Metadata.from("department", "骨科")));
+
+            List<EmbeddingMatch<TextSegment>> filtered = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1, 0, 0}))
+                    .filter(metadataKey("department").isEqualTo("骨科"))
+                    .maxResults(5)
+                    .build()).matches();
+            assertEquals(1, filtered.size());
+            assertEquals(fracture, filtered.get(0).embeddingId());
+
+            store.removeAll(List.of(fever));
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1, 0, 0}))
+                    .maxResults(5)
+                    .build()).matches();
+            assertEquals(1, matches.size());
+            assertEquals("骨折", matches.get(0).embedded().text());
+            assertEquals(1, store.count());
+        }
+    }
+
+    @Test
+    void testPersistAndReload(@TempDir Path directory) throws Exception {
+        Random random = new Random(11);
+        float[] target = randomVector(random);
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            for (int i = 0; i < 200; i++) {
+                store.add("v" + i, Embedding.from(randomVector(random)));
+            }
+            store.add(Embedding.from(target), TextSegment.from("挂号流程", Metadata.from("source", "guide.md")));
+        }
+
+        try (HnswEmbeddingStore reloaded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            assertEquals(201, reloaded.count());
+            EmbeddingMatch<TextSegment> best = reloaded.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(target))
+                    .maxResults(1)
+                    .build()).matches().get(0);
+            assertEquals("挂号流程", best.embedded().text());
+            assertEquals("guide.md", best.embedded().metadata().getString("source"));
+            assertArrayEquals(target, best.embedding().vector());
+        }
+    }
+
+    @Test
+    void testStoreIdChangesWhenDataIsDiscarded(@TempDir Path directory) throws Exception {
+        Random random = new Random(13);
+        String storeId;
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            store.add("v0", Embedding.from(randomVector(random)));
+            storeId = store.storeId();
+        }
+        try (HnswEmbeddingStore reloaded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            assertEquals(storeId, reloaded.storeId());
+        }
+
+        // 向量文件丢失，与索引文件不匹配，已有数据被忽略，导入清单中记录的片段不再属于这个索引
+        Files.delete(directory.resolve("vectors.f32"));
+        try (HnswEmbeddingStore discarded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            assertEquals(0, discarded.count());
+            assertNotEquals(storeId, discarded.storeId());
+        }
+    }
+
+    @Test
+    void testCompactionReclaimsDeletedSlots(@TempDir Path directory) throws Exception {
+        Random random = new Random(3);
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add("v" + i);
+            embeddings.add(Embedding.from(randomVector(random)));
+        }
+        Path vectorsFile = directory.resolve("vectors.f32");
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32, 0, 0.3)) {
+            store.addAll(ids, embeddings, null);
+            long sizeBefore = Files.size(vectorsFile);
+
+            // 删除40%的节点，超过压缩阈值，用剩余节点重建
+            store.removeAll(ids.subList(0, 40));
+
+            assertEquals(60, store.count());
+            assertTrue(Files.size(vectorsFile) < sizeBefore);
+            assertEquals("v70", nearest(store, embeddings.get(70)));
+        }
+
+        try (HnswEmbeddingStore reloaded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            assertEquals(60, reloaded.count());
+            assertEquals("v99", nearest(reloaded, embeddings.get(99)));
+        }
+    }
+
+    @Test
+    void testWritesArePersistedOnFlushAndClose(@TempDir Path directory) throws Exception {
+        Random random = new Random(5);
+        // 刷盘间隔足够长，测试期间后台线程不会保存
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32, 60000, 0.3)) {
+            for (int i = 0; i < 10; i++) {
+                store.add("v" + i, Embedding.from(randomVector(random)));
+            }
+            assertFalse(Files.exists(directory.resolve("graph.bin")));
+
+            store.flush();
+            try (HnswEmbeddingStore reloaded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+                assertEquals(10, reloaded.count());
+            }
+            store.add("v10", Embedding.from(randomVector(random)));
+        }
+
+        // 关闭时保存剩余的写入
+        try (HnswEmbeddingStore reloaded = new HnswEmbeddingStore(directory, DistanceMetric.EUCLIDEAN, 8, 50, 32)) {
+            assertEquals(11, reloaded.count());
+        }
+    }
+
+    private static String nearest(HnswEmbeddingStore store, Embedding query) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(1)
+                .build()).matches().get(0).embeddingId();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,89 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.RagConfig;
+import com.atguigu.java.ai.langchain4j.rag.HybridContentRetriever;
+import com.atguigu.java.ai.langchain4j.rag.LexicalSegmentIndex;
+import com.atguigu.java.ai.langchain4j.rag.LocalReranker;
+import com.atguigu.java.ai.langchain4j.search.RelevanceScorer;
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 关键词与向量混合检索测试
+ */
+public class HybridContentRetrieverTest {
+
+    private static final Map<String, String> SEGMENTS = Map.of(
+            "address", "医院地址：北京市昌平区某某路1号，可乘坐地铁昌平线到达",
+            "neurology", "神经内科主任医师张建国，出诊时间为周一上午和周三下午，科室电话010-88886666",
+            "dental", "口腔科提供洁牙、补牙、拔牙服务，周末照常开诊");
+
+    /**
+     * 所有文本得到相同的向量，模拟向量检索区分不出精确词的情况
+     */
+    private static class FlatEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < textSegments.size(); i++) {
+                embeddings.add(Embedding.from(new float[]{1, 0, 0}));
+            }
+            return Response.from(embeddings);
+        }
+    }
+
+    @Test
+    void testLexicalIndexFindsExactTerms() {
+        LexicalSegmentIndex index = buildIndex();
+
+        List<LexicalSegmentIndex.Hit> hits = index.search("010-88886666", 3);
+        assertEquals("neurology", hits.get(0).id());
+
+        index.removeAll(List.of("neurology"));
+        assertTrue(index.search("010-88886666", 3).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testHybridRetrievalRanksExactMatchFirst() throws Exception {
+        EmbeddingModel embeddingModel = new FlatEmbeddingModel();
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 8, 50, 32)) {
+            for (Map.Entry<String, String> entry : SEGMENTS.entrySet()) {
+                TextSegment segment = TextSegment.from(entry.getValue(), Metadata.from("file_name", entry.getKey() + ".md"));
+                store.addAll(List.of(entry.getKey()), List.of(embeddingModel.embed(segment).content()), List.of(segment));
+            }
+            RagConfig ragConfig = new RagConfig();
+            HybridContentRetriever retriever = new HybridContentRetriever(store, embeddingModel, buildIndex(),
+                    new LocalReranker(new RelevanceScorer(), ragConfig.getFusionWeight(), ragConfig.getLexicalWeight()),
+                    ragConfig, null);
+
+            List<Content> contents = retriever.retrieve(Query.from("张建国医生什么时候出诊"));
+
+            assertFalse(contents.isEmpty());
+            assertTrue(contents.get(0).textSegment().text().contains("张建国"));
+            assertTrue(contents.size() <= ragConfig.getMaxResults());
+        }
+    }
+
+    private static LexicalSegmentIndex buildIndex() {
+        LexicalSegmentIndex index = new LexicalSegmentIndex();
+        for (Map.Entry<String, String> entry : SEGMENTS.entrySet()) {
+            index.upsert(entry.getKey(), TextSegment.from(entry.getValue(), Metadata.from("file_name", entry.getKey() + ".md")));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,201 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.bean.KnowledgeFileManifest;
+import com.atguigu.java.ai.langchain4j.bean.KnowledgeSegment;
+import com.atguigu.java.ai.langchain4j.config.RagConfig;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeBaseIngestionService;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeNamespaces;
+import com.atguigu.java.ai.langchain4j.rag.LexicalSegmentIndex;
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import com.mongodb.client.result.DeleteResult;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 知识库增量导入测试：在临时目录中比对导入清单，MongoDB由内存中的清单和片段代替
+ */
+public class KnowledgeBaseIngestionServiceTest {
+
+    @TempDir
+    Path baseDirectory;
+
+    private final Map<String, KnowledgeFileManifest> manifests = new ConcurrentHashMap<>();
+
+    private final Map<String, KnowledgeSegment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 向量模型计算过的片段数量
+     */
+    private final AtomicInteger embeddedSegments = new AtomicInteger();
+
+    private final HnswEmbeddingStore embeddingStore = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 8, 50, 32);
+
+    private final KnowledgeBaseIngestionService service = new KnowledgeBaseIngestionService();
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.findAll(KnowledgeFileManifest.class)).thenAnswer(invocation -> new ArrayList<>(manifests.values()));
+        when(mongoTemplate.findById(anyString(), eq(KnowledgeFileManifest.class)))
+                .thenAnswer(invocation -> manifests.get(invocation.<String>getArgument(0)));
+        when(mongoTemplate.exists(any(Query.class), eq(KnowledgeSegment.class))).thenAnswer(invocation -> !segments.isEmpty());
+        when(mongoTemplate.stream(any(Query.class), eq(KnowledgeSegment.class))).thenReturn(Stream.empty());
+        doAnswer(invocation -> {
+            Object document = invocation.getArgument(0);
+            if (document instanceof KnowledgeFileManifest manifest) {
+                manifests.put(manifest.getPath(), manifest);
+            } else if (document instanceof KnowledgeSegment segment) {
+                segments.put(segment.getSegmentId(), segment);
+            }
+            return document;
+        }).when(mongoTemplate).save(any());
+        doAnswer(invocation -> {
+            manifests.remove(invocation.<KnowledgeFileManifest>getArgument(0).getPath());
+            return DeleteResult.acknowledged(1);
+        }).when(mongoTemplate).remove(any(KnowledgeFileManifest.class));
+
+        EmbeddingModel embeddingModel = textSegments -> {
+            embeddedSegments.addAndGet(textSegments.size());
+            return Response.from(textSegments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                    .toList());
+        };
+
+        KnowledgeNamespaces knowledgeNamespaces = new KnowledgeNamespaces();
+        ReflectionTestUtils.setField(knowledgeNamespaces, "ragConfig", new RagConfig());
+        ReflectionTestUtils.setField(knowledgeNamespaces, "embeddingStore", embeddingStore);
+
+        ReflectionTestUtils.setField(service, "knowledgeNamespaces", knowledgeNamespaces);
+        ReflectionTestUtils.setField(service, "embeddingModel", embeddingModel);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "lexicalSegmentIndex", new LexicalSegmentIndex());
+        ApplicationEventPublisher eventPublisher = event -> {
+        };
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "basePath", baseDirectory.toString());
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "embedBatchSize", 8);
+        ReflectionTestUtils.setField(service, "maxSegmentChars", 300);
+        ReflectionTestUtils.setField(service, "maxOverlapChars", 30);
+        service.initIngestExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        service.shutdownIngestExecutor();
+        embeddingStore.close();
+    }
+
+    @Test
+    void testDiffAddedChangedAndRemovedFiles() throws Exception {
+        // 每个文件都短于一个片段的长度，只切分出一个片段
+        write("医院信息.md", "北京协和医院位于东城区帅府园一号。");
+        write("科室信息.txt", "神经内科位于门诊楼三层。");
+
+        KnowledgeBaseIngestionService.IngestionReport first = service.ingest();
+        assertEquals(new KnowledgeBaseIngestionService.IngestionReport(2, 2, 0, 2, 0, 0), first);
+        assertEquals(Set.of("医院信息.md", "科室信息.txt"), manifests.keySet());
+        assertEquals(2, embeddingStore.count());
+
+        // 没有变化的文件直接跳过，不重新计算向量
+        KnowledgeBaseIngestionService.IngestionReport unchanged = service.ingest();
+        assertEquals(new KnowledgeBaseIngestionService.IngestionReport(2, 0, 0, 0, 0, 0), unchanged);
+        assertEquals(2, embeddedSegments.get());
+
+        write("科室信息.txt", "神经内科位于门诊楼四层。");
+        Files.delete(baseDirectory.resolve("医院信息.md"));
+        write("神经内科.md", "神经内科专家门诊周一至周五上午出诊。");
+
+        KnowledgeBaseIngestionService.IngestionReport changed = service.ingest();
+        // 修改和新增的文件各写入一个片段；修改前的片段和已删除文件的片段被删除
+        assertEquals(new KnowledgeBaseIngestionService.IngestionReport(2, 2, 1, 2, 2, 0), changed);
+        assertEquals(Set.of("科室信息.txt", "神经内科.md"), manifests.keySet());
+        assertEquals(2, embeddingStore.count());
+        assertEquals(4, embeddedSegments.get());
+    }
+
+    @Test
+    void testSegmentIdsAreStable() throws Exception {
+        Path file = write("医院信息.md", "北京协和医院位于东城区帅府园一号。");
+        service.ingest();
+        Set<String> segmentIds = Set.copyOf(manifests.get("医院信息.md").getSegments().keySet());
+
+        // 只有修改时间变化，内容相同：只更新清单，片段ID不变
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+        KnowledgeBaseIngestionService.IngestionReport touched = service.ingest();
+        assertEquals(0, touched.addedSegments());
+        assertEquals(0, touched.removedSegments());
+        assertEquals(segmentIds, manifests.get("医院信息.md").getSegments().keySet());
+
+        // 清单丢失后重新导入，相同路径和内容生成相同的片段ID，向量库中不会出现重复片段
+        manifests.clear();
+        service.ingest();
+        assertEquals(segmentIds, manifests.get("医院信息.md").getSegments().keySet());
+        assertEquals(1, embeddingStore.count());
+    }
+
+    @Test
+    void testReingestWhenStoreChanges() throws Exception {
+        write("医院信息.md", "北京协和医院位于东城区帅府园一号。");
+        service.ingest();
+
+        // 升级前的清单没有记录向量存储，向量存储中有数据时认为片段仍然有效，只补齐清单
+        manifests.get("医院信息.md").setStoreType(null);
+        manifests.get("医院信息.md").setStoreId(null);
+        KnowledgeBaseIngestionService.IngestionReport legacy = service.ingest();
+        assertEquals(0, legacy.addedSegments());
+        assertEquals(embeddingStore.storeId(), manifests.get("医院信息.md").getStoreId());
+
+        // 换成新的向量存储（切换存储类型或本地索引的已有数据被忽略），清单不变也要重新写入
+        try (HnswEmbeddingStore replaced = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 8, 50, 32)) {
+            KnowledgeNamespaces knowledgeNamespaces =
+                    (KnowledgeNamespaces) ReflectionTestUtils.getField(service, "knowledgeNamespaces");
+            ReflectionTestUtils.setField(knowledgeNamespaces, "embeddingStore", replaced);
+            KnowledgeBaseIngestionService.IngestionReport reingested = service.ingest();
+
+            assertEquals(new KnowledgeBaseIngestionService.IngestionReport(1, 1, 0, 1, 0, 0), reingested);
+            assertEquals(1, replaced.count());
+            assertEquals(replaced.storeId(), manifests.get("医院信息.md").getStoreId());
+            assertEquals(0, service.ingest().changedFiles());
+        }
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = baseDirectory.resolve(name);
+        boolean existed = Files.exists(file);
+        long previous = existed ? Files.getLastModifiedTime(file).toMillis() : 0;
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        if (existed) {
+            // 文件系统的时间精度可能不足，保证修改后的时间与清单中记录的不同
+            Files.setLastModifiedTime(file, FileTime.fromMillis(previous + 1000));
+        }
+        return file;
+    }
+}
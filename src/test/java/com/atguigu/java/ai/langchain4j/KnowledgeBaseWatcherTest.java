@@ -0,0 +1,94 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeBaseIngestionService;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeBaseWatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 知识库目录监听测试：记录触发的导入，同一文件的多次变化只导入一次，整体扫描取代尚未执行的单文件导入
+ * 导入在单线程中按计划时间顺序执行，之后变化的另一个文件被导入时，之前的导入一定已经执行完毕
+ */
+public class KnowledgeBaseWatcherTest {
+
+    private static final String FULL_SCAN = "*";
+
+    @TempDir
+    Path baseDirectory;
+
+    /**
+     * 按执行顺序记录的导入：文件名，或*表示整个目录
+     */
+    private final BlockingQueue<String> imports = new LinkedBlockingQueue<>();
+
+    private final KnowledgeBaseWatcher watcher = new KnowledgeBaseWatcher();
+
+    private class RecordingIngestionService extends KnowledgeBaseIngestionService {
+
+        @Override
+        public Path getBaseDirectory() {
+            return baseDirectory;
+        }
+
+        @Override
+        public IngestionReport ingest() {
+            imports.add(FULL_SCAN);
+            return new IngestionReport(0, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public IngestionReport ingestFile(Path file) {
+            imports.add(file.getFileName().toString());
+            return new IngestionReport(1, 1, 0, 0, 0, 0);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(watcher, "knowledgeBaseIngestionService", new RecordingIngestionService());
+        ReflectionTestUtils.setField(watcher, "enabled", true);
+        ReflectionTestUtils.setField(watcher, "debounceMs", 500L);
+        watcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void testRepeatedChangesAreDebounced() throws Exception {
+        Path file = baseDirectory.resolve("科室信息.md");
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(file, "神经内科位于门诊楼" + i + "层");
+        }
+        assertEquals("科室信息.md", imports.poll(30, TimeUnit.SECONDS));
+
+        Files.writeString(baseDirectory.resolve("医院信息.md"), "北京协和医院");
+        assertEquals("医院信息.md", imports.poll(30, TimeUnit.SECONDS));
+        assertTrue(imports.isEmpty(), "同一文件的多次变化应只导入一次: " + imports);
+    }
+
+    @Test
+    void testFullScanSupersedesPendingFileImports() throws Exception {
+        Files.writeString(baseDirectory.resolve("科室信息.md"), "神经内科");
+        // 新建子目录触发整体扫描，尚未执行的单文件导入被取消
+        Files.createDirectory(baseDirectory.resolve("科室"));
+        assertEquals(FULL_SCAN, imports.poll(30, TimeUnit.SECONDS));
+
+        Files.writeString(baseDirectory.resolve("医院信息.md"), "北京协和医院");
+        assertEquals("医院信息.md", imports.poll(30, TimeUnit.SECONDS));
+        assertTrue(imports.isEmpty(), "整体扫描之外不应再单独导入: " + imports);
+    }
+}
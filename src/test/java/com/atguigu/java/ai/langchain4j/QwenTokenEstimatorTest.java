@@ -0,0 +1,72 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.atguigu.java.ai.langchain4j.memory.QwenTokenEstimator;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * token数量估算测试
+ */
+public class QwenTokenEstimatorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QwenTokenEstimator estimator = new QwenTokenEstimator();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(estimator, "memoryConfig", new MemoryConfig());
+        ReflectionTestUtils.setField(estimator, "meterRegistry", meterRegistry);
+        estimator.initCache();
+    }
+
+    @Test
+    void testEstimateText() {
+        // 汉字、数字逐个计数，英文单词约4个字符1个token，空白不计
+        assertEquals(4, QwenTokenEstimator.estimateTokenCountInText("挂号流程"));
+        assertEquals(4, QwenTokenEstimator.estimateTokenCountInText("2024"));
+        assertEquals(4, QwenTokenEstimator.estimateTokenCountInText("hello world"));
+        assertEquals(0, QwenTokenEstimator.estimateTokenCountInText(null));
+    }
+
+    @Test
+    void testEstimateMessagesIncludesOverhead() {
+        assertEquals(4 + 6, estimator.estimateTokenCountInMessage(UserMessage.from("头痛挂什么科")));
+
+        ToolExecutionRequest request = ToolExecutionRequest.builder().id("1").name("searchWeb").arguments("{}").build();
+        // 消息开销4 + 工具调用开销8 + searchWeb 3 + {} 2
+        assertEquals(17, estimator.estimateTokenCountInMessage(AiMessage.from(request)));
+        // 消息开销4 + searchWeb 3 + 北京今天晴 5
+        assertEquals(12, estimator.estimateTokenCountInMessage(ToolExecutionResultMessage.from(request, "北京今天晴")));
+    }
+
+    @Test
+    void testEqualContentHitsCache() {
+        estimator.estimateTokenCountInMessage(UserMessage.from("明天有号吗"));
+        // 从数据库重新读取的消息是新的实例，内容相同即可命中
+        estimator.estimateTokenCountInMessage(UserMessage.from("明天有号吗"));
+        // 内容相同但类型不同的消息分别估算
+        estimator.estimateTokenCountInMessage(AiMessage.from("明天有号吗"));
+
+        assertEquals(1, cacheGets("hit"));
+        assertEquals(2, cacheGets("miss"));
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "chat-message-tokens")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+}
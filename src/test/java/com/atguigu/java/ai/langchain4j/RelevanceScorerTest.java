@@ -0,0 +1,62 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.search.CjkBigramTokenizer;
+import com.atguigu.java.ai.langchain4j.search.RelevanceScorer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索结果相关性打分测试
+ */
+public class RelevanceScorerTest {
+
+    private final RelevanceScorer scorer = new RelevanceScorer();
+
+    @Test
+    void testTokenizeChineseWithoutSpaces() {
+        List<Long> terms = new ArrayList<>();
+        int count = CjkBigramTokenizer.tokenize("头痛发热", terms::add);
+
+        // 头痛、痛发、发热
+        assertEquals(3, count);
+        assertEquals(3, terms.stream().distinct().count());
+    }
+
+    @Test
+    void testTokenizeIgnoresCaseAndFullWidth() {
+        List<Long> halfWidth = new ArrayList<>();
+        List<Long> fullWidth = new ArrayList<>();
+        CjkBigramTokenizer.tokenize("CT检查", halfWidth::add);
+        CjkBigramTokenizer.tokenize("ｃｔ检查", fullWidth::add);
+
+        assertEquals(halfWidth, fullWidth);
+    }
+
+    @Test
+    void testRelevantResultScoresHigher() {
+        RelevanceScorer.PreparedQuery query = scorer.prepare("头痛发热挂什么科");
+
+        double relevant = scorer.score(query, "头痛发热挂什么科", "头痛伴发热建议就诊神经内科或发热门诊");
+        double partial = scorer.score(query, "发热的常见原因", "发热常见于感染");
+        double unrelated = scorer.score(query, "胃痛怎么办", "胃痛常见于胃炎");
+
+        assertTrue(relevant > partial);
+        assertTrue(partial > unrelated);
+        assertEquals(0.0, unrelated);
+        assertTrue(relevant < 1.0);
+    }
+
+    @Test
+    void testTitleBoost() {
+        RelevanceScorer.PreparedQuery query = scorer.prepare("偏头痛");
+
+        double inTitle = scorer.score(query, "偏头痛", "常见病");
+        double inSnippet = scorer.score(query, "常见病", "偏头痛");
+
+        assertTrue(inTitle > inSnippet);
+    }
+}
@@ -0,0 +1,113 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.rag.InstrumentedContentRetriever;
+import com.atguigu.java.ai.langchain4j.store.InstrumentedChatMemoryStore;
+import com.atguigu.java.ai.langchain4j.store.embedding.DistanceMetric;
+import com.atguigu.java.ai.langchain4j.store.embedding.HnswEmbeddingStore;
+import com.atguigu.java.ai.langchain4j.store.embedding.InstrumentedEmbeddingStore;
+import com.atguigu.java.ai.langchain4j.tools.ToolMetrics;
+import com.atguigu.java.ai.langchain4j.tools.ToolTimingChatMemory;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 检索、记忆和工具调用的分阶段指标测试
+ */
+public class RetrievalMetricsTest {
+
+    @Test
+    void testVectorSearchRecordsLatencyAndScores() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (HnswEmbeddingStore hnsw = new HnswEmbeddingStore(null, DistanceMetric.COSINE, 16, 100, 64)) {
+            hnsw.addAll(List.of("a", "b"),
+                    List.of(Embedding.from(new float[]{1, 0}), Embedding.from(new float[]{0, 1})),
+                    List.of(TextSegment.from("医院地址"), TextSegment.from("门诊时间")));
+            InstrumentedEmbeddingStore<TextSegment> store = new InstrumentedEmbeddingStore<>(hnsw, "default", registry);
+
+            store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1, 0}))
+                    .maxResults(2)
+                    .build());
+
+            assertEquals(1, registry.get("xiaozhi.rag.vector.latency").tag("namespace", "default").timer().count());
+            assertEquals(2.0, registry.get("xiaozhi.rag.vector.matches").summary().totalAmount());
+            DistributionSummary scores = registry.get("xiaozhi.rag.vector.score").summary();
+            assertEquals(2, scores.count());
+            assertEquals(1.0, registry.get("xiaozhi.rag.vector.top.score").summary().max(), 1e-6);
+        }
+    }
+
+    @Test
+    void testRetrieverCountsEmptyResults() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InstrumentedContentRetriever retriever = new InstrumentedContentRetriever("default",
+                query -> query.text().contains("地址") ? List.of(Content.from("医院地址：北京市昌平区")) : List.of(),
+                registry);
+
+        retriever.retrieve(Query.from("医院地址在哪"));
+        retriever.retrieve(Query.from("今天天气怎么样"));
+
+        assertEquals(2, registry.get("xiaozhi.rag.retrieve.latency").timer().count());
+        assertEquals(1.0, registry.get("xiaozhi.rag.retrieve.contents").summary().totalAmount());
+        assertEquals(1.0, registry.get("xiaozhi.rag.retrieve.empty").counter().count());
+    }
+
+    @Test
+    void testMemoryStoreRecordsOperations() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InstrumentedChatMemoryStore store = new InstrumentedChatMemoryStore("chat-memory", new InMemoryChatMemoryStore(), registry);
+
+        List<ChatMessage> messages = List.of(UserMessage.from("你好"), UserMessage.from("我想挂号"));
+        store.updateMessages(1L, messages);
+        assertEquals(2, store.getMessages(1L).size());
+        store.deleteMessages(1L);
+
+        for (String operation : List.of("get", "update", "delete")) {
+            assertEquals(1, registry.get("xiaozhi.memory.latency").tag("operation", operation).timer().count());
+        }
+        assertEquals(2.0, registry.get("xiaozhi.memory.messages").summary().totalAmount());
+    }
+
+    @Test
+    void testToolTimingRecordsOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolMetrics toolMetrics = new ToolMetrics();
+        ReflectionTestUtils.setField(toolMetrics, "meterRegistry", registry);
+        ChatMemory chatMemory = new ToolTimingChatMemory(MessageWindowChatMemory.withMaxMessages(20), toolMetrics);
+        ToolExecutionRequest hours = ToolExecutionRequest.builder().id("1").name("查询门诊时间").arguments("{}").build();
+        ToolExecutionRequest search = ToolExecutionRequest.builder().id("2").name("搜索医疗信息").arguments("{}").build();
+
+        // 与智能体的顺序相同：先写入要求调用工具的AI消息，每个工具执行完后写入其结果
+        chatMemory.add(UserMessage.from("门诊几点开门"));
+        chatMemory.add(AiMessage.from(List.of(hours, search)));
+        chatMemory.add(ToolExecutionResultMessage.from(hours, "周一至周日 8:00-17:00"));
+        // 搜索工具捕获了异常，返回兜底结果前标记失败
+        toolMetrics.markFailure();
+        chatMemory.add(ToolExecutionResultMessage.from(search, "搜索医疗信息时发生错误：timeout"));
+        chatMemory.add(AiMessage.from("门诊时间为每天8:00-17:00"));
+
+        assertEquals(5, chatMemory.messages().size());
+        assertEquals(1, registry.get("xiaozhi.tool.latency").tags("tool", "查询门诊时间", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("xiaozhi.tool.latency").tags("tool", "搜索医疗信息", "outcome", "error").timer().count());
+        assertEquals(2, registry.find("xiaozhi.tool.latency").timers().size());
+    }
+}
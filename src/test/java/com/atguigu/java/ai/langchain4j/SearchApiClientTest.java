@@ -0,0 +1,199 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.SearchConfig;
+import com.atguigu.java.ai.langchain4j.search.SearchApiClient;
+import com.atguigu.java.ai.langchain4j.search.SearchCircuitBreaker;
+import com.atguigu.java.ai.langchain4j.search.SearchCircuitOpenException;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Exceptions;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索API客户端的熔断、对冲请求和调用超时测试，使用本地HTTP服务模拟搜索API
+ * 慢响应由闩锁挂起，不依赖睡眠和耗时判断
+ */
+public class SearchApiClientTest {
+
+    private static final String RESPONSE = "{\"webPages\":{\"value\":[]}}";
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /**
+     * 熔断器使用的时钟（纳秒），由测试手动推进
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * 挂起的请求在此等待，测试结束时放行
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * 模拟服务返回的状态码
+     */
+    private volatile int status = 200;
+
+    /**
+     * 是否挂起第一个请求（不返回任何内容）
+     */
+    private volatile boolean holdFirstRequest;
+
+    /**
+     * 是否在写出部分响应体后挂起
+     */
+    private volatile boolean stallAfterFirstChunk;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/search", exchange -> {
+            int index = requestCount.incrementAndGet();
+            try {
+                if (index == 1 && holdFirstRequest) {
+                    release.await();
+                }
+                byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                if (stallAfterFirstChunk) {
+                    exchange.sendResponseHeaders(status, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body, 0, 10);
+                    out.flush();
+                    release.await();
+                } else {
+                    exchange.sendResponseHeaders(status, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCircuitOpensAndRecovers() {
+        SearchConfig config = new SearchConfig();
+        config.setCircuitWindowSize(4);
+        config.setCircuitMinimumCalls(4);
+        config.setCircuitFailureRateThreshold(50);
+        config.setCircuitOpenMs(300);
+        config.setCircuitHalfOpenPermits(1);
+        SearchApiClient client = createClient(config);
+
+        status = 500;
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RuntimeException.class, () -> search(client));
+        }
+        assertEquals(SearchCircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+
+        // 熔断打开期间直接失败，不再请求搜索服务
+        assertThrows(SearchCircuitOpenException.class, () -> search(client));
+        assertEquals(4, requestCount.get());
+
+        // 打开时间结束后放行探测请求，成功则关闭
+        status = 200;
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(301));
+        assertEquals(RESPONSE, search(client));
+        assertEquals(SearchCircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+        client.disposeConnectionProvider();
+    }
+
+    @Test
+    void testHedgedRequestWinsOverStalledPrimary() {
+        SearchConfig config = new SearchConfig();
+        config.setHedgeEnabled(true);
+        config.setHedgeMinSamples(0);
+        config.setHedgeMinDelayMs(100);
+        SearchApiClient client = createClient(config);
+
+        // 主请求一直挂起，只有对冲请求能返回结果
+        holdFirstRequest = true;
+        assertEquals(RESPONSE, search(client));
+
+        assertEquals(2, requestCount.get());
+        assertEquals(1, meterRegistry.counter("xiaozhi.search.hedged").count());
+        client.disposeConnectionProvider();
+    }
+
+    @Test
+    void testHedgeNotCountedWhenPrimaryAnswersFirst() {
+        SearchConfig config = new SearchConfig();
+        config.setHedgeEnabled(true);
+        config.setHedgeMinSamples(0);
+        config.setHedgeMinDelayMs(60000);
+        SearchApiClient client = createClient(config);
+
+        assertEquals(RESPONSE, search(client));
+
+        // 对冲请求在延迟结束前被取消，没有发出也不计入对冲次数
+        assertEquals(1, requestCount.get());
+        assertEquals(0, meterRegistry.counter("xiaozhi.search.hedged").count());
+        client.disposeConnectionProvider();
+    }
+
+    @Test
+    void testCallTimeoutCoversWholeResponse() {
+        SearchConfig config = new SearchConfig();
+        config.setCallTimeoutMs(300);
+        SearchApiClient client = createClient(config);
+
+        // 首字节及时到达，但响应体迟迟读不完
+        stallAfterFirstChunk = true;
+        RuntimeException e = assertThrows(RuntimeException.class, () -> search(client));
+
+        assertInstanceOf(TimeoutException.class, Exceptions.unwrap(e));
+        client.disposeConnectionProvider();
+    }
+
+    private SearchApiClient createClient(SearchConfig config) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/search";
+        return new SearchApiClient(url, "test-key", 5, config, meterRegistry, clock::get);
+    }
+
+    private static String search(SearchApiClient client) {
+        return DataBufferUtils.join(client.search("头痛"))
+                .map(buffer -> {
+                    String body = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return body;
+                })
+                .block();
+    }
+}
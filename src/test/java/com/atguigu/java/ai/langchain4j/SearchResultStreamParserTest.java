@@ -0,0 +1,54 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.search.SearchResultStreamParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索响应流式解析测试
+ */
+public class SearchResultStreamParserTest {
+
+    private static final String RESPONSE = "{\"queryContext\":{\"name\":\"忽略\"},"
+            + "\"webPages\":{\"value\":["
+            + "{\"name\":\"神经内科\",\"url\":\"https://example.com/1\",\"snippet\":\"头痛\","
+            + "\"deepLinks\":[{\"name\":\"嵌套标题\",\"url\":\"https://example.com/nested\"}]},"
+            + "{\"name\":\"发热门诊\",\"url\":\"https://example.com/2\",\"snippet\":\"发热\"},"
+            + "{\"name\":\"感染科\",\"url\":\"https://example.com/3\"}"
+            + "]},\"relatedSearches\":{\"value\":[{\"name\":\"不应被解析\"}]}}";
+
+    @Test
+    void testParseInOneChunk() throws Exception {
+        SearchResultStreamParser<String> parser = new SearchResultStreamParser<>(5, (title, snippet, url) -> title + "|" + snippet + "|" + url);
+        parser.feed(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of(
+                "神经内科|头痛|https://example.com/1",
+                "发热门诊|发热|https://example.com/2",
+                "感染科||https://example.com/3"), parser.finish());
+    }
+
+    @Test
+    void testParseByteByByte() throws Exception {
+        // 每次只输入一个字节，汉字的UTF-8编码和字段名都会被拆开
+        SearchResultStreamParser<String> parser = new SearchResultStreamParser<>(5, (title, snippet, url) -> title);
+        for (byte b : RESPONSE.getBytes(StandardCharsets.UTF_8)) {
+            parser.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+
+        assertEquals(List.of("神经内科", "发热门诊", "感染科"), parser.finish());
+    }
+
+    @Test
+    void testStopAfterLimit() throws Exception {
+        SearchResultStreamParser<String> parser = new SearchResultStreamParser<>(2, (title, snippet, url) -> title);
+
+        assertTrue(parser.feed(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(List.of("神经内科", "发热门诊"), parser.finish());
+    }
+}
@@ -0,0 +1,275 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.AnswerCacheConfig;
+import com.atguigu.java.ai.langchain4j.rag.KnowledgeBaseChangedEvent;
+import com.atguigu.java.ai.langchain4j.rag.SemanticAnswerCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 语义答案缓存测试：命中条件、不缓存的情况、过期和淘汰、知识库变化后失效
+ * 向量模型按问题返回固定向量，近似重复的问题使用相同向量，其他问题互相正交
+ */
+public class SemanticAnswerCacheTest {
+
+    private static final String ANSWER = "医院地址：北京市朝阳区";
+
+    /**
+     * 问题到向量的映射，未列出的问题按出现顺序分配正交向量
+     */
+    private static class FixedEmbeddingModel implements EmbeddingModel {
+
+        private final Map<String, Integer> axes = new ConcurrentHashMap<>(Map.of(
+                "医院地址在哪里", 0,
+                "医院的地址在哪", 0));
+
+        private final AtomicInteger nextAxis = new AtomicInteger(1);
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : textSegments) {
+                float[] vector = new float[64];
+                vector[axes.computeIfAbsent(segment.text(), text -> nextAxis.getAndIncrement())] = 1;
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        }
+    }
+
+    private final AnswerCacheConfig config = new AnswerCacheConfig();
+
+    private final Map<Object, ChatMemory> memories = new ConcurrentHashMap<>();
+
+    private final AtomicInteger generations = new AtomicInteger();
+
+    /**
+     * 答案过期使用的时钟（纳秒），由测试手动推进
+     */
+    private final AtomicLong ticker = new AtomicLong();
+
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        config.setEnabled(true);
+        config.setMaxSize(100);
+        config.setTtlSeconds(60);
+        ChatMemoryProvider chatMemoryProvider = this::memory;
+        cache = new SemanticAnswerCache();
+        ReflectionTestUtils.setField(cache, "answerCacheConfig", config);
+        ReflectionTestUtils.setField(cache, "embeddingModel", new FixedEmbeddingModel());
+        ReflectionTestUtils.setField(cache, "chatMemoryProvider", chatMemoryProvider);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "ticker", (Ticker) ticker::get);
+        cache.initCache();
+    }
+
+    @Test
+    void testNearDuplicateQuestionReplaysCachedAnswer() {
+        assertEquals(ANSWER, chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里")));
+        assertEquals(ANSWER, chat(2L, "医院的地址在哪", answerWithoutTools(2L, "医院的地址在哪")));
+
+        assertEquals(1, generations.get());
+        // 回放的问答写入聊天记忆，后续追问仍然有上下文
+        List<?> messages = memories.get(2L).messages();
+        assertInstanceOf(SystemMessage.class, messages.get(0));
+        assertEquals(UserMessage.from("医院的地址在哪"), messages.get(1));
+        assertEquals(AiMessage.from(ANSWER), messages.get(2));
+    }
+
+    @Test
+    void testDifferentQuestionMisses() {
+        chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里"));
+        chat(2L, "挂号流程是什么", answerWithoutTools(2L, "挂号流程是什么"));
+
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testAnswerOutsideFirstTurnIsNotCached() {
+        ChatMemory memory = memory(1L);
+        memory.add(SystemMessage.from("系统提示词"));
+        memory.add(UserMessage.from("我头痛，挂什么科"));
+        memory.add(AiMessage.from("建议挂神经内科"));
+
+        // 第二轮的答案可能依赖上文，不写入缓存
+        chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里"));
+        chat(2L, "医院地址在哪里", answerWithoutTools(2L, "医院地址在哪里"));
+
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testAnswerUsingToolsIsNotCached() {
+        chat(1L, "医院地址在哪里", () -> Flux.defer(() -> {
+            generations.incrementAndGet();
+            ChatMemory memory = memory(1L);
+            memory.add(SystemMessage.from("系统提示词"));
+            memory.add(UserMessage.from("医院地址在哪里"));
+            ToolExecutionRequest request = ToolExecutionRequest.builder().id("1").name("search").arguments("{}").build();
+            memory.add(AiMessage.from(request));
+            memory.add(ToolExecutionResultMessage.from(request, "搜索结果"));
+            memory.add(AiMessage.from(ANSWER));
+            return Flux.just(ANSWER);
+        }));
+        chat(2L, "医院地址在哪里", answerWithoutTools(2L, "医院地址在哪里"));
+
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testDateSensitiveQuestionBypassesCache() {
+        chat(1L, "今天门诊开吗", answerWithoutTools(1L, "今天门诊开吗"));
+        chat(2L, "今天门诊开吗", answerWithoutTools(2L, "今天门诊开吗"));
+        chat(3L, "5月1日门诊开吗", answerWithoutTools(3L, "5月1日门诊开吗"));
+        chat(4L, "5月1日门诊开吗", answerWithoutTools(4L, "5月1日门诊开吗"));
+
+        assertEquals(4, generations.get());
+    }
+
+    @Test
+    void testAnswerFromPreviousDayIsNotReplayed() {
+        ReflectionTestUtils.setField(cache, "clock",
+                Clock.fixed(Instant.parse("2026-10-18T15:00:00Z"), ZoneId.of("Asia/Shanghai")));
+        chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里"));
+
+        // 跨过零点，缓存仍在有效期内，但不再命中
+        ReflectionTestUtils.setField(cache, "clock",
+                Clock.fixed(Instant.parse("2026-10-18T16:30:00Z"), ZoneId.of("Asia/Shanghai")));
+        chat(2L, "医院地址在哪里", answerWithoutTools(2L, "医院地址在哪里"));
+
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testAnswerExpiresAfterTtl() {
+        chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里"));
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        chat(2L, "医院地址在哪里", answerWithoutTools(2L, "医院地址在哪里"));
+        assertEquals(1, generations.get());
+
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        chat(3L, "医院地址在哪里", answerWithoutTools(3L, "医院地址在哪里"));
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testSizeBoundEvictsAnswers() {
+        config.setMaxSize(2);
+        cache.initCache();
+        List<String> questions = List.of("医院地址在哪里", "挂号流程是什么", "门诊几点开始", "停车场在哪里");
+        long id = 1;
+        for (String question : questions) {
+            chat(id, question, answerWithoutTools(id, question));
+            id++;
+        }
+        Cache<?, ?> answers = (Cache<?, ?>) ReflectionTestUtils.getField(cache, "answers");
+        answers.cleanUp();
+        assertTrue(answers.estimatedSize() <= 2);
+
+        int before = generations.get();
+        for (String question : questions) {
+            chat(id, question, answerWithoutTools(id, question));
+            id++;
+        }
+        // 被淘汰的问题重新生成，保留的最多2个
+        assertTrue(generations.get() - before >= questions.size() - 2);
+    }
+
+    @Test
+    void testKnowledgeBaseChangeInvalidatesAnswers() {
+        chat(1L, "医院地址在哪里", answerWithoutTools(1L, "医院地址在哪里"));
+        cache.onKnowledgeBaseChanged(new KnowledgeBaseChangedEvent(3, 1));
+        chat(2L, "医院地址在哪里", answerWithoutTools(2L, "医院地址在哪里"));
+
+        assertEquals(2, generations.get());
+        // 失效后写入的答案可以再次命中
+        chat(3L, "医院地址在哪里", answerWithoutTools(3L, "医院地址在哪里"));
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void testPutDuringIndexRebuildIsNotLost() throws Exception {
+        // 写入与清空缓存（重建索引）并发，缓存中保留的每个答案都必须能在索引中找到
+        Thread writer = new Thread(() -> {
+            for (long i = 0; i < 40; i++) {
+                String question = "问题" + i;
+                chat(i, question, answerWithoutTools(i, question));
+            }
+        });
+        Thread invalidator = new Thread(() -> {
+            for (int i = 0; i < 20; i++) {
+                cache.invalidateAll();
+            }
+        });
+        writer.start();
+        invalidator.start();
+        writer.join();
+        invalidator.join();
+
+        Cache<?, ?> answers = (Cache<?, ?>) ReflectionTestUtils.getField(cache, "answers");
+        List<String> cached = new ArrayList<>();
+        answers.asMap().values().forEach(answer -> cached.add(ReflectionTestUtils.invokeMethod(answer, "question")));
+        int before = generations.get();
+        long id = 1000;
+        for (String question : cached) {
+            chat(id, question, answerWithoutTools(id, question));
+            id++;
+        }
+        assertEquals(before, generations.get());
+    }
+
+    /**
+     * 模拟智能体：生成答案并写入聊天记忆，没有调用工具
+     */
+    private Supplier<Flux<String>> answerWithoutTools(Long memoryId, String question) {
+        return () -> Flux.defer(() -> {
+            generations.incrementAndGet();
+            ChatMemory memory = memory(memoryId);
+            memory.add(SystemMessage.from("系统提示词"));
+            memory.add(UserMessage.from(question));
+            memory.add(AiMessage.from(ANSWER));
+            return Flux.just("医院地址：", "北京市朝阳区");
+        });
+    }
+
+    private ChatMemory memory(Object memoryId) {
+        return memories.computeIfAbsent(memoryId, id -> MessageWindowChatMemory.withMaxMessages(20));
+    }
+
+    private String chat(Long memoryId, String question, Supplier<Flux<String>> generator) {
+        return String.join("", cache.chat(memoryId, question, generator).collectList().block());
+    }
+}
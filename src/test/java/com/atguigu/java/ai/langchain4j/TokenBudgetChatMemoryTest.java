@@ -0,0 +1,83 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.MemoryConfig;
+import com.atguigu.java.ai.langchain4j.memory.QwenTokenEstimator;
+import com.atguigu.java.ai.langchain4j.memory.TokenBudgetChatMemory;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按token预算截断的记忆窗口测试
+ */
+public class TokenBudgetChatMemoryTest {
+
+    private final QwenTokenEstimator estimator = new QwenTokenEstimator();
+
+    private final InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(estimator, "memoryConfig", new MemoryConfig());
+        ReflectionTestUtils.setField(estimator, "meterRegistry", new SimpleMeterRegistry());
+        estimator.initCache();
+    }
+
+    @Test
+    void testEvictsOldestMessagesAndKeepsSystemMessage() {
+        TokenBudgetChatMemory memory = new TokenBudgetChatMemory(1, 30, estimator, store);
+        memory.add(SystemMessage.from("你是小智"));       // 8
+        memory.add(UserMessage.from("头痛挂什么科"));      // 10
+        memory.add(AiMessage.from("神经内科"));           // 8
+        memory.add(UserMessage.from("明天有号吗"));        // 9，合计35超出预算
+
+        assertEquals(List.of(SystemMessage.from("你是小智"), AiMessage.from("神经内科"), UserMessage.from("明天有号吗")),
+                store.getMessages(1));
+        assertTrue(estimator.estimateTokenCountInMessages(memory.messages()) <= 30);
+    }
+
+    @Test
+    void testEvictsToolResultsWithTheirRequest() {
+        ToolExecutionRequest request = ToolExecutionRequest.builder().id("1").name("searchWeb").arguments("{}").build();
+        TokenBudgetChatMemory memory = new TokenBudgetChatMemory(2, 45, estimator, store);
+        memory.add(SystemMessage.from("你是小智"));                             // 8
+        memory.add(AiMessage.from(request));                                  // 17
+        memory.add(ToolExecutionResultMessage.from(request, "北京今天晴"));      // 12
+        memory.add(AiMessage.from("今天晴"));                                  // 7
+        memory.add(UserMessage.from("谢谢"));                                  // 6，合计50超出预算
+
+        // 工具调用请求被移出时，紧随其后的工具结果一并移出
+        assertEquals(List.of(SystemMessage.from("你是小智"), AiMessage.from("今天晴"), UserMessage.from("谢谢")),
+                store.getMessages(2));
+    }
+
+    @Test
+    void testKeepsLatestMessageOverBudget() {
+        TokenBudgetChatMemory memory = new TokenBudgetChatMemory(3, 10, estimator, store);
+        memory.add(UserMessage.from("你好"));
+        memory.add(UserMessage.from("请帮我查询一下神经内科明天上午的专家号"));
+
+        assertEquals(List.of(UserMessage.from("请帮我查询一下神经内科明天上午的专家号")), store.getMessages(3));
+    }
+
+    @Test
+    void testChangedSystemMessageReplacesPrevious() {
+        TokenBudgetChatMemory memory = new TokenBudgetChatMemory(4, 100, estimator, store);
+        memory.add(SystemMessage.from("你是小智"));
+        memory.add(UserMessage.from("你好"));
+        memory.add(SystemMessage.from("你是医疗助手小智"));
+
+        assertEquals(List.of(UserMessage.from("你好"), SystemMessage.from("你是医疗助手小智")), store.getMessages(4));
+    }
+}
@@ -0,0 +1,111 @@
+package com.atguigu.java.ai.langchain4j;
+
+import com.atguigu.java.ai.langchain4j.config.StreamConfig;
+import com.atguigu.java.ai.langchain4j.stream.TokenStreamShaper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式输出整形测试
+ * 时间窗口使用虚拟时间，客户端的读取速度由StepVerifier的请求数量控制，不依赖睡眠
+ */
+public class TokenStreamShaperTest {
+
+    @Test
+    void testCoalescesBySize() {
+        Flux<String> tokens = Flux.fromIterable(Collections.nCopies(10, "abcdefgh"));
+
+        StepVerifier.create(TokenStreamShaper.coalesce(tokens, 16, Duration.ofSeconds(5), Schedulers.parallel()))
+                .expectNextSequence(Collections.nCopies(5, "abcdefghabcdefgh"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testFlushesAfterDelay() {
+        // 中文每个字3个字节，两个token远小于64字节，只能靠时间窗口写出
+        StepVerifier.withVirtualTime(() -> TokenStreamShaper.coalesce(
+                        Flux.concat(Flux.just("挂号", "流程"), Mono.delay(Duration.ofMillis(300)).thenMany(Flux.just("如下"))),
+                        64, Duration.ofMillis(20), Schedulers.parallel()))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(19))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("挂号流程")
+                .thenAwait(Duration.ofMillis(300))
+                .expectNext("如下")
+                .verifyComplete();
+    }
+
+    @Test
+    void testHoldsChunkUntilRequested() {
+        Sinks.Many<String> source = Sinks.many().unicast().onBackpressureBuffer();
+
+        // 客户端暂时不读取，没有需求期间到达的token合并进同一个分片
+        StepVerifier.withVirtualTime(() -> TokenStreamShaper.coalesce(
+                        source.asFlux(), 4, Duration.ofMillis(10), Schedulers.parallel()), 0)
+                .expectSubscription()
+                .then(() -> List.of("a", "b", "c", "d", "e", "f").forEach(source::tryEmitNext))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenRequest(1)
+                .expectNext("abcdef")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void testCancelStopsUpstream() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        StepVerifier.withVirtualTime(() -> TokenStreamShaper.coalesce(
+                        Flux.interval(Duration.ofMillis(5)).map(String::valueOf).doOnCancel(() -> cancelled.set(true)),
+                        8, Duration.ofMillis(20), Schedulers.parallel()), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(50))
+                .thenCancel()
+                .verify();
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testServerSentEventsDoNotQueueChunksForSlowClient() {
+        StreamConfig streamConfig = new StreamConfig();
+        streamConfig.setMaxChunkBytes(1);
+        TokenStreamShaper shaper = new TokenStreamShaper();
+        ReflectionTestUtils.setField(shaper, "streamConfig", streamConfig);
+        Sinks.Many<String> source = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> tokens = List.of("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l");
+
+        // 每个token都达到分片大小；客户端不读取时最多各有一个分片停在publish和merge的队列里，其余token合并
+        StepVerifier.create(shaper.toServerSentEvents(source.asFlux()), 0)
+                .expectSubscription()
+                .then(() -> tokens.forEach(source::tryEmitNext))
+                .then(source::tryEmitComplete)
+                .thenRequest(Long.MAX_VALUE)
+                .recordWith(ArrayList::new)
+                .thenConsumeWhile(event -> true)
+                .consumeRecordedWith(events -> {
+                    List<String> messages = events.stream()
+                            .filter(event -> "message".equals(event.event()))
+                            .map(ServerSentEvent::data)
+                            .toList();
+                    assertTrue(messages.size() <= 3, "分片 " + messages);
+                    assertEquals(String.join("", tokens), String.join("", messages));
+                    assertEquals("done", new ArrayList<>(events).get(events.size() - 1).event());
+                })
+                .verifyComplete();
+    }
+}
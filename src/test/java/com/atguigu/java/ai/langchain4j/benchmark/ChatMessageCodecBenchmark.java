@@ -0,0 +1,114 @@
+package com.atguigu.java.ai.langchain4j.benchmark;
+
+import com.atguigu.java.ai.langchain4j.store.codec.BinaryChatMessageCodec;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天记录编码的大小与解码耗时对比
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.atguigu.java.ai.langchain4j.benchmark.ChatMessageCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageCodecBenchmark {
+
+    /**
+     * 对话轮数，每轮包含用户消息、工具调用、工具结果和助手回复
+     */
+    @Param({"5", "20"})
+    private int turns;
+
+    private final BinaryChatMessageCodec binaryCodec = new BinaryChatMessageCodec(false, 0);
+    private final BinaryChatMessageCodec compressedCodec = new BinaryChatMessageCodec(true, 512);
+
+    private String json;
+    private byte[] binary;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        List<ChatMessage> messages = createMedicalDialogue(turns);
+        json = ChatMessageSerializer.messagesToJson(messages);
+        binary = binaryCodec.encode(messages);
+        compressed = compressedCodec.encode(messages);
+        System.out.printf("%n[turns=%d] json=%d bytes, binary=%d bytes, binary+deflate=%d bytes%n",
+                turns, json.getBytes(StandardCharsets.UTF_8).length, binary.length, compressed.length);
+    }
+
+    @Benchmark
+    public List<ChatMessage> decodeJson() {
+        return ChatMessageDeserializer.messagesFromJson(json);
+    }
+
+    @Benchmark
+    public List<ChatMessage> decodeBinary() {
+        return binaryCodec.decode(binary);
+    }
+
+    @Benchmark
+    public List<ChatMessage> decodeBinaryCompressed() {
+        return compressedCodec.decode(compressed);
+    }
+
+    /**
+     * 模拟包含搜索工具结果的分导诊对话
+     */
+    static List<ChatMessage> createMedicalDialogue(int turns) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from("你的名字是“硅谷小智”，你是一家名为“北京协和医院”的智能客服。"));
+        for (int i = 0; i < turns; i++) {
+            messages.add(UserMessage.from("我最近头痛，还伴有发热症状，体温38.5度，第" + i + "次咨询，应该挂哪个科室？"));
+            ToolExecutionRequest request = ToolExecutionRequest.builder()
+                    .id("call_" + i)
+                    .name("智能分导诊")
+                    .arguments("{\"symptoms\":\"头痛 发热 38.5度\"}")
+                    .build();
+            messages.add(AiMessage.from(List.of(request)));
+            StringBuilder toolResult = new StringBuilder("🔍 基于 \"头痛 发热\" 的医疗搜索结果：\n\n");
+            for (int j = 0; j < 5; j++) {
+                toolResult.append("📋 证据").append(j + 1).append(" [medical_website]\n")
+                        .append("标题: 头痛伴发热的常见原因与就诊科室建议\n")
+                        .append("摘要: 头痛伴发热常见于上呼吸道感染、流感等，持续高热或伴颈项强直需警惕脑膜炎，建议就诊神经内科或感染科。\n")
+                        .append("来源: https://example.com/medical/").append(j).append("\n")
+                        .append("相关性得分: 0.80\n\n");
+            }
+            messages.add(ToolExecutionResultMessage.from("call_" + i, "智能分导诊", toolResult.toString()));
+            messages.add(AiMessage.from("根据您的症状描述，建议您挂神经内科。如果高热不退，请及时前往发热门诊就诊。"));
+        }
+        return messages;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ChatMessageCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
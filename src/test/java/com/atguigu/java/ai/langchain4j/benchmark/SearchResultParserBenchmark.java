@@ -0,0 +1,143 @@
+package com.atguigu.java.ai.langchain4j.benchmark;
+
+import com.atguigu.java.ai.langchain4j.entity.SearchEvidence;
+import com.atguigu.java.ai.langchain4j.search.SearchResultStreamParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索响应解析对比：整段字符串+JsonNode树 与 按DataBuffer分块流式解析
+ * 运行时加上 -prof gc 可以同时对比每次解析的内存分配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchResultParserBenchmark {
+
+    private static final int LIMIT = 5;
+
+    /**
+     * 响应中webPages.value的结果数量
+     */
+    @Param({"10", "50"})
+    private int pages;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 模拟网络读取到的分块响应数据
+     */
+    private List<byte[]> chunks;
+
+    @Setup
+    public void setUp() {
+        byte[] response = createResponse(pages).getBytes(StandardCharsets.UTF_8);
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < response.length; offset += 8192) {
+            int length = Math.min(8192, response.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(response, offset, chunk, 0, length);
+            chunks.add(chunk);
+        }
+    }
+
+    /**
+     * 原实现：拼接完整字符串后构建JsonNode树，再取前5条
+     */
+    @Benchmark
+    public List<SearchEvidence> treeParse() throws Exception {
+        int total = 0;
+        for (byte[] chunk : chunks) {
+            total += chunk.length;
+        }
+        byte[] body = new byte[total];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, body, offset, chunk.length);
+            offset += chunk.length;
+        }
+        String response = new String(body, StandardCharsets.UTF_8);
+
+        List<SearchEvidence> evidenceList = new ArrayList<>();
+        JsonNode webPages = objectMapper.readTree(response).path("webPages").path("value");
+        for (int i = 0; i < Math.min(webPages.size(), LIMIT); i++) {
+            JsonNode page = webPages.get(i);
+            evidenceList.add(toEvidence(page.path("name").asText(), page.path("snippet").asText(), page.path("url").asText()));
+        }
+        return evidenceList;
+    }
+
+    /**
+     * 流式解析：逐块输入，读到5条后停止
+     */
+    @Benchmark
+    public List<SearchEvidence> streamParse() throws Exception {
+        SearchResultStreamParser<SearchEvidence> parser =
+                new SearchResultStreamParser<>(LIMIT, SearchResultParserBenchmark::toEvidence);
+        for (byte[] chunk : chunks) {
+            if (parser.feed(ByteBuffer.wrap(chunk))) {
+                break;
+            }
+        }
+        return parser.finish();
+    }
+
+    private static SearchEvidence toEvidence(String title, String snippet, String url) {
+        return new SearchEvidence(title, snippet, url, 0.5, "medical_website", "头痛 发热");
+    }
+
+    static String createResponse(int pages) {
+        StringBuilder json = new StringBuilder("{\"_type\":\"SearchResponse\",\"queryContext\":{\"originalQuery\":\"头痛 发热\"},");
+        json.append("\"webPages\":{\"totalEstimatedMatches\":12000,\"value\":[");
+        for (int i = 0; i < pages; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"https://api.example.com/#WebPages.").append(i).append("\",")
+                    .append("\"name\":\"头痛伴发热的常见原因与就诊科室建议 ").append(i).append("\",")
+                    .append("\"url\":\"https://example.com/medical/").append(i).append("\",")
+                    .append("\"isFamilyFriendly\":true,")
+                    .append("\"snippet\":\"头痛伴发热常见于上呼吸道感染、流感等，持续高热或伴颈项强直需警惕脑膜炎，建议就诊神经内科或感染科。\",")
+                    .append("\"deepLinks\":[{\"name\":\"神经内科\",\"url\":\"https://example.com/dept/neuro\",\"snippet\":\"科室介绍\"},")
+                    .append("{\"name\":\"发热门诊\",\"url\":\"https://example.com/dept/fever\",\"snippet\":\"门诊时间\"}],")
+                    .append("\"dateLastCrawled\":\"2025-05-01T00:00:00.0000000Z\",\"language\":\"zh\"}");
+        }
+        json.append("]},\"relatedSearches\":{\"value\":[");
+        for (int i = 0; i < pages; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"text\":\"头痛发热挂什么科 ").append(i).append("\",\"displayText\":\"头痛发热挂什么科\"}");
+        }
+        json.append("]},\"rankingResponse\":{\"mainline\":{\"items\":[]}}}");
+        return json.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SearchResultParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}